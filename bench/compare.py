@@ -0,0 +1,182 @@
+#!/usr/bin/env python3
+"""Runs the same Lox programs on clox (c/) and jlox (java/) and compares them side by side.
+
+clox is built with gcc as a release build, jlox with maven. Every program runs on clox and on each jlox
+backend, the outputs must match. The report shows the median wall time, the peak RSS and how both compare
+to clox. Programs are started through rss.c, which measures their peak RSS.
+
+A JVM takes far longer to start than clox, which would decide every wall time ratio on its own. Each
+implementation therefore first runs an empty program, `nil`, and the ratios compare the net time, the wall
+time minus that baseline. Net times below a millisecond get no ratio, they are within the noise.
+
+clox only compiles a single expression so far, so the corpus consists of expressions. jlox gets each of
+them as `print <expression>;`. A directory of such expression files can be given with --corpus, by default
+a generated corpus is used, --scale grows its programs. The default scale keeps the larger programs well
+above the startup time.
+
+Usage: bench/compare.py [--runs N] [--scale N] [--corpus DIR] [--build-dir DIR]
+"""
+
+import argparse
+import os
+import statistics
+import subprocess
+import sys
+import tempfile
+import time
+
+ROOT = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+CLOX_SOURCES = os.path.join(ROOT, "c")
+JLOX_PROJECT = os.path.join(ROOT, "java")
+JLOX_MAIN = "io.github.rohitdm97.loximpl.Application"
+
+# name and extra arguments of every jlox backend that is compared
+JLOX_BACKENDS = [
+    ("jlox", []),
+    ("jlox --vm", ["--vm"]),
+    ("jlox --jit", ["--jit"]),
+]
+
+# clox keeps at most 256 constants in a chunk, programs stay below that
+MAX_CONSTANTS = 250
+
+# program whose run time is all startup, subtracted from the others
+BASELINE = "nil"
+
+# net times below this many seconds are noise, no ratio is computed from them
+MIN_NET = 0.001
+
+
+def generated_corpus(scale):
+    """Expressions covering what clox supports, each prints the same on both implementations."""
+    terms = MAX_CONSTANTS // 3
+    return {
+        "small": "1 + 2",
+        "arithmetic": " + ".join("(%d * 3 - %d)" % (i, i) for i in range(1, terms + 1)),
+        "comparison": " == ".join("(%d < %d)" % (i, i + 1) for i in range(MAX_CONSTANTS // 2)),
+        "strings": " + ".join('"lox%d"' % (i % 10) for i in range(MAX_CONSTANTS)),
+        "grouping": "(" * 200 * scale + "1" + ")" * 200 * scale,
+        # no constants at all, so it can grow as far as the jlox stack allows
+        "equality": " == ".join(["true", "!false"] * 2000 * scale),
+        "negation": " == ".join(["!nil", "!!true"] * 2000 * scale),
+    }
+
+
+def load_corpus(directory):
+    corpus = {}
+    for name in sorted(os.listdir(directory)):
+        if name.endswith(".lox"):
+            with open(os.path.join(directory, name)) as file:
+                corpus[name[:-len(".lox")]] = file.read().strip()
+    return corpus
+
+
+def build_rss(build_dir):
+    binary = os.path.join(build_dir, "rss")
+    subprocess.run(["gcc", "-O2", "-o", binary, os.path.join(ROOT, "bench", "rss.c")], check=True)
+    return binary
+
+
+def build_clox(build_dir):
+    binary = os.path.join(build_dir, "clox")
+    sources = sorted(os.path.join(CLOX_SOURCES, name) for name in os.listdir(CLOX_SOURCES) if name.endswith(".c"))
+    # NDEBUG turns off the bytecode dump and the execution trace
+    subprocess.run(["gcc", "-O2", "-DNDEBUG", "-o", binary] + sources, check=True)
+    return [binary]
+
+
+def build_jlox(build_dir):
+    classpath_file = os.path.join(build_dir, "classpath.txt")
+    subprocess.run(["mvn", "-B", "-q", "-f", os.path.join(JLOX_PROJECT, "pom.xml"), "compile",
+                    "dependency:build-classpath", "-Dmdep.outputFile=" + classpath_file], check=True)
+    with open(classpath_file) as file:
+        dependencies = file.read().strip()
+    classpath = os.path.join(JLOX_PROJECT, "target", "classes") + os.pathsep + dependencies
+    # long expressions nest deeply in the AST, which the tree-walker recurses through
+    return ["java", "-Xss512m", "-cp", classpath, JLOX_MAIN]
+
+
+def run(launcher, command):
+    """Returns the output, exit code, wall time in seconds and peak RSS in KiB of one run."""
+    with tempfile.NamedTemporaryFile(mode="r") as rss_file:
+        start = time.perf_counter()
+        process = subprocess.run([launcher, rss_file.name] + command, stdout=subprocess.PIPE, stderr=subprocess.STDOUT)
+        wall = time.perf_counter() - start
+        peak = int(rss_file.read().strip() or 0)
+    return process.stdout.decode().strip(), process.returncode, wall, peak
+
+
+def measure(launcher, command, runs):
+    results = [run(launcher, command) for _ in range(runs)]
+    output, code = results[0][0], results[0][1]
+    return output, code, statistics.median(r[2] for r in results), max(r[3] for r in results)
+
+
+def ratio(net, clox_net):
+    if net < MIN_NET or clox_net < MIN_NET:
+        return "-"
+    return "%.2f" % (net / clox_net)
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compare jlox against clox on the same Lox programs.")
+    parser.add_argument("--runs", type=int, default=5, help="runs per program and implementation")
+    parser.add_argument("--scale", type=int, default=20, help="size factor of the generated programs")
+    parser.add_argument("--corpus", help="directory of .lox files, each holding one expression")
+    parser.add_argument("--build-dir", help="where clox and the generated programs go")
+    args = parser.parse_args()
+
+    build_dir = args.build_dir or tempfile.mkdtemp(prefix="lox-compare-")
+    os.makedirs(build_dir, exist_ok=True)
+    launcher = build_rss(build_dir)
+    clox = build_clox(build_dir)
+    jlox = build_jlox(build_dir)
+    corpus = load_corpus(args.corpus) if args.corpus else generated_corpus(args.scale)
+
+    def write(name, text):
+        path = os.path.join(build_dir, name)
+        with open(path, "w") as file:
+            file.write(text + "\n")
+        return path
+
+    # startup of every implementation, measured on the empty program
+    implementations = [("clox", clox, lambda expression: expression)] + [
+        (backend, jlox + flags, lambda expression: "print " + expression + ";") for backend, flags in JLOX_BACKENDS]
+    baselines = {}
+    for impl, command, program in implementations:
+        _, _, baselines[impl], _ = measure(launcher, command + [write("baseline.%s.lox" % impl.replace(" ", ""),
+                                                                        program(BASELINE))], args.runs)
+
+    header = "%-12s %-12s %10s %10s %9s %10s %9s  %s" % (
+        "program", "impl", "wall ms", "net ms", "x clox", "RSS MiB", "x clox", "output")
+    print(header)
+    print("-" * len(header))
+    for impl, _, _ in implementations:
+        print("%-12s %-12s %10.1f" % ("(startup)" if impl == "clox" else "", impl, baselines[impl] * 1000))
+    mismatches = 0
+    for name, expression in corpus.items():
+        clox_file = write(name + ".clox.lox", expression)
+        jlox_file = write(name + ".jlox.lox", "print " + expression + ";")
+
+        expected, code, clox_wall, clox_rss = measure(launcher, clox + [clox_file], args.runs)
+        clox_net = max(clox_wall - baselines["clox"], 0)
+        status = "ok" if code == 0 else "exit %d" % code
+        print("%-12s %-12s %10.1f %10.1f %9s %10.1f %9s  %s" % (
+            name, "clox", clox_wall * 1000, clox_net * 1000, ratio(clox_net, clox_net), clox_rss / 1024, "1.00", status))
+        for backend, flags in JLOX_BACKENDS:
+            output, code, wall, rss = measure(launcher, jlox + flags + [jlox_file], args.runs)
+            net = max(wall - baselines[backend], 0)
+            status = "ok" if output == expected else "MISMATCH"
+            if output != expected:
+                mismatches += 1
+                print("    clox: %.60s\n    %s: %.60s" % (expected, backend, output), file=sys.stderr)
+            print("%-12s %-12s %10.1f %10.1f %9s %10.1f %9.2f  %s" % (
+                "", backend, wall * 1000, net * 1000, ratio(net, clox_net), rss / 1024, rss / clox_rss, status))
+
+    if mismatches:
+        print("%d outputs differ from clox" % mismatches, file=sys.stderr)
+        sys.exit(1)
+
+
+if __name__ == "__main__":
+    main()
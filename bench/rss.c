@@ -0,0 +1,44 @@
+// Runs a command and writes its peak RSS in KiB to a file, used by compare.py.
+// A process forked from a large one, like the Python interpreter, starts with the RSS of its parent counted
+// in its peak, forking from this small program keeps that out of the number.
+
+#include <stdio.h>
+#include <sys/resource.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+int main(int argc, char* argv[]) {
+	if (argc < 3) {
+		fprintf(stderr, "Usage: rss <output file> <command> [arguments]\n");
+		return 64;
+	}
+
+	pid_t pid = fork();
+	if (pid < 0) {
+		perror("fork");
+		return 71;
+	}
+	if (pid == 0) {
+		execvp(argv[2], argv + 2);
+		perror(argv[2]);
+		_exit(127);
+	}
+
+	int status;
+	struct rusage usage;
+	if (wait4(pid, &status, 0, &usage) < 0) {
+		perror("wait4");
+		return 71;
+	}
+
+	FILE* out = fopen(argv[1], "w");
+	if (out == NULL) {
+		perror(argv[1]);
+		return 73;
+	}
+	fprintf(out, "%ld\n", usage.ru_maxrss);
+	fclose(out);
+
+	if (WIFEXITED(status)) return WEXITSTATUS(status);
+	return 128 + WTERMSIG(status);
+}
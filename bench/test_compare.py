@@ -0,0 +1,68 @@
+#!/usr/bin/env python3
+"""Tests of compare.py, run with: python3 -m unittest discover bench"""
+
+import os
+import re
+import shutil
+import subprocess
+import tempfile
+import unittest
+
+import compare
+
+
+class RatioTest(unittest.TestCase):
+
+    def test_divides_net_times(self):
+        self.assertEqual("2.50", compare.ratio(0.5, 0.2))
+        self.assertEqual("1.00", compare.ratio(0.3, 0.3))
+
+    def test_noise_gets_no_ratio(self):
+        self.assertEqual("-", compare.ratio(compare.MIN_NET / 2, 1.0))
+        self.assertEqual("-", compare.ratio(1.0, compare.MIN_NET / 2))
+        self.assertEqual("-", compare.ratio(0, 0))
+
+
+class CorpusTest(unittest.TestCase):
+
+    def test_programs_fit_in_a_clox_chunk(self):
+        for scale in (1, 20):
+            for name, expression in compare.generated_corpus(scale).items():
+                constants = re.findall(r'"[^"]*"|\d+(?:\.\d+)?', expression)
+                self.assertLessEqual(len(constants), compare.MAX_CONSTANTS, name)
+
+    def test_scale_grows_only_the_programs_without_constants(self):
+        small, large = compare.generated_corpus(1), compare.generated_corpus(4)
+        self.assertEqual(small.keys(), large.keys())
+        for name in small:
+            if name in ("grouping", "equality", "negation"):
+                self.assertGreater(len(large[name]), len(small[name]), name)
+            else:
+                self.assertEqual(small[name], large[name], name)
+
+    def test_load_reads_one_expression_per_lox_file(self):
+        with tempfile.TemporaryDirectory() as directory:
+            for name, text in (("b.lox", "1 + 2\n"), ("a.lox", "  !nil "), ("notes.txt", "ignored")):
+                with open(os.path.join(directory, name), "w") as file:
+                    file.write(text)
+            self.assertEqual({"a": "!nil", "b": "1 + 2"}, compare.load_corpus(directory))
+
+
+@unittest.skipUnless(shutil.which("gcc"), "needs gcc to build clox")
+class CloxTest(unittest.TestCase):
+
+    def test_clox_runs_the_generated_corpus(self):
+        with tempfile.TemporaryDirectory() as build_dir:
+            clox = compare.build_clox(build_dir)
+            for name, expression in compare.generated_corpus(1).items():
+                path = os.path.join(build_dir, name + ".lox")
+                with open(path, "w") as file:
+                    file.write(expression + "\n")
+                process = subprocess.run(clox + [path], stdout=subprocess.PIPE, stderr=subprocess.STDOUT)
+                self.assertEqual(0, process.returncode, name + ": " + process.stdout.decode())
+            self.assertEqual(b"3", subprocess.run(clox + [os.path.join(build_dir, "small.lox")],
+                                                  stdout=subprocess.PIPE).stdout.strip())
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -5,7 +5,10 @@
 #include <stddef.h>
 #include <stdint.h>
 
+// release builds, like the one bench/compare.py makes, print neither
+#ifndef NDEBUG
 #define DEBUG_PRINT_CODE
 #define DEBUG_TRACE_EXECUTION
+#endif
 
 #endif
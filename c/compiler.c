@@ -138,6 +138,7 @@ static void grouping() {
 }
 
 static void parse_precedence(Precedence precedence) {
+    advance();
     ParseFn prefixRule = get_rule(parser.previous.type)->prefix;
     if (prefixRule == NULL) {
         error("Expect expression.");
@@ -2,6 +2,8 @@
 #include "debug.h"
 #include "value.h"
 
+static int constant_instruction(const char* name, Chunk* chunk, int offset);
+static int simple_instruction(const char* name, int offset);
 
 void disassemble_chunk(Chunk* chunk, const char* name)
 {
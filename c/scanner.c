@@ -63,6 +63,10 @@ static void skip_whitespace() {
 		case '\t':
 			advance();
 			break;
+		case '\n':
+			scanner.line++;
+			advance();
+			break;
 		case '/':
 			if (peek_next() == '/') {
 				// A comment goes until the end of the line.
@@ -47,5 +47,6 @@ void writeValueArray(ValueArray* array, Value value);
 void freeValueArray(ValueArray* array);
 
 void printValue(Value value);
+bool are_values_equal(Value a, Value b);
 
 #endif
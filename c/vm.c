@@ -3,6 +3,7 @@
 #include <string.h>
 
 #include "common.h"
+#include "compiler.h"
 #include "object.h"
 #include "memory.h"
 #include "vm.h"
@@ -10,6 +11,8 @@
 
 VM vm;
 
+static InterpretResult run();
+
 static void reset_stack() {
 	vm.stackTop = vm.stack;
 }
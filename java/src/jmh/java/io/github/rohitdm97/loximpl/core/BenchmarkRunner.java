@@ -0,0 +1,29 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of target/benchmarks.jar, takes the usual JMH options and always adds the GC profiler
+ * <p>
+ * Besides ops/s every benchmark reports gc.alloc.rate and gc.alloc.rate.norm, the bytes allocated per operation.
+ * Results saved with {@code -rf json -rff baseline.json} can be compared against later runs, for example
+ * {@code java -jar target/benchmarks.jar InterpreterBenchmark -p workload=arithmetic}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,128 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// one compiled workload run by every benchmark thread on an engine of its own, every run checks its output against
+// a run made up front, each benchmark comes on one thread and on as many threads as there are cores to show how it
+// scales
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+    @Param({"fib", "binary_trees", "method_calls", "field_access", "string_concat", "closures", "inheritance", "arithmetic",
+            "arithmetic_locals"})
+    String workload;
+
+    @Param({"TREE_WALKER", "TIERED", "BYTECODE"})
+    String backend;
+
+    private CompiledScript script;
+    private String expected;
+    // what each thread printed during its current run
+    private final ThreadLocal<ByteArrayOutputStream> printed = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                printed.get().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                printed.get().write(b, off, len);
+            }
+        }, true));
+
+        script = new Engine(Engine.Backend.valueOf(backend)).compile(Workloads.source(workload));
+        if (script == null) {
+            throw new IllegalStateException("Workload " + workload + " has errors");
+        }
+        script.run();
+        expected = printed.get().toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    // engine of a benchmark thread, its globals live as long as the thread
+    @State(Scope.Thread)
+    public static class Worker {
+        Engine engine;
+
+        @Setup
+        public void setUp(ConcurrencyBenchmark benchmark) {
+            engine = new Engine(Engine.Backend.valueOf(benchmark.backend));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void sameEngine(Worker worker) {
+        runOn(worker);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void sameEngineAllCores(Worker worker) {
+        runOn(worker);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void newEngine() {
+        runOnNewEngine();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void newEngineAllCores() {
+        runOnNewEngine();
+    }
+
+    private void runOn(Worker worker) {
+        printed.get().reset();
+        worker.engine.run(script);
+        check();
+    }
+
+    private void runOnNewEngine() {
+        printed.get().reset();
+        script.run();
+        check();
+    }
+
+    private void check() {
+        final String output = printed.get().toString();
+        if (!expected.equals(output)) {
+            throw new IllegalStateException("Expected " + expected.trim() + " but the run printed " + output.trim());
+        }
+    }
+
+}
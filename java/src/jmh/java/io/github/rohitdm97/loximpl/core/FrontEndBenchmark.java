@@ -0,0 +1,66 @@
+package io.github.rohitdm97.loximpl.core;
+
+import io.github.rohitdm97.loximpl.error.ErrorReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// each phase in front of the Interpreter, fed with the output of the phases before it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    @Param({"fib", "binary_trees", "method_calls", "field_access", "string_concat", "closures", "inheritance", "arithmetic",
+            "arithmetic_locals"})
+    String workload;
+
+    private ErrorReport report;
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        report = Workloads.report();
+        source = Workloads.source(workload);
+        final Scanner scanner = new Scanner(source, report);
+        scanner.scan();
+        tokens = scanner.getTokens();
+        statements = new Parser(tokens, report).parse();
+    }
+
+    @Benchmark
+    public Object scan() {
+        final Scanner scanner = new Scanner(source, report);
+        scanner.scan();
+        return scanner.getTokens();
+    }
+
+    @Benchmark
+    public Object parse() {
+        return new Parser(tokens, report).parse();
+    }
+
+    // resolving the same statements again writes the same slots into them
+    @Benchmark
+    public Object resolve() {
+        new Resolver(report).resolve(statements);
+        return statements;
+    }
+
+}
@@ -0,0 +1,62 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// one run of a whole workload per operation, the statements are analyzed once up front
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"fib", "binary_trees", "method_calls", "field_access", "string_concat", "closures", "inheritance", "arithmetic",
+            "arithmetic_locals"})
+    String workload;
+
+    // TREE_WALKER or TIERED, the bytecode VM does not run through the Interpreter
+    @Param({"TREE_WALKER", "TIERED"})
+    String backend;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        statements = Workloads.analyze(workload);
+        final Jit jit = Engine.Backend.valueOf(backend) == Engine.Backend.TIERED ? new Jit() : null;
+        interpreter = new Interpreter(Workloads.report(), jit);
+        // the result each workload prints would flood the output
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public void interpret() {
+        interpreter.interpret(statements);
+    }
+
+}
@@ -0,0 +1,43 @@
+package io.github.rohitdm97.loximpl.core;
+
+import io.github.rohitdm97.loximpl.error.ErrorReport;
+import org.apache.logging.log4j.LogManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// the Lox programs in src/jmh/resources/workloads the benchmarks run
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static String source(String name) {
+        final String resource = "/workloads/" + name + ".lox";
+        try (InputStream in = Workloads.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No workload " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // scanned, parsed, resolved and optimized like Engine.run does
+    static List<Stmt> analyze(String name) {
+        final List<Stmt> statements = new Engine().analyze(source(name));
+        if (statements == null) {
+            throw new IllegalStateException("Workload " + name + " has errors");
+        }
+        return statements;
+    }
+
+    static ErrorReport report() {
+        return new ErrorReport(new Engine(), LogManager.getLogger(Workloads.class));
+    }
+
+}
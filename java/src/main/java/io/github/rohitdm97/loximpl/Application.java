@@ -14,10 +14,15 @@ public class Application {
         FILE, PROMPT
     }
 
-    private final Engine engine = new Engine();
+    private Engine engine;
 
     @Setter
     private Mode mode;
+    // set by parse
+    Engine.Backend backend = Engine.Backend.TREE_WALKER;
+    boolean stats = false;
+    // path of the script to run, null for the prompt
+    String script;
     private String source;
 
     public static void main(String[] args) {
@@ -29,13 +34,18 @@ public class Application {
     }
 
     public void run(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        if (!parse(args)) {
+            System.out.println("Usage: jlox [--vm|--jit] [--stats] [script]");
             System.exit(64);
         }
-        if (args.length == 1) {
+        if (stats) {
+            // read once by the engine, so it has to be set before the first one is created
+            System.setProperty("lox.stats", "true");
+        }
+        engine = new Engine(backend);
+        if (script != null) {
             setMode(Mode.FILE);
-            loadSource(args[0]);
+            loadSource(script);
             run(source);
         } else {
             setMode(Mode.PROMPT);
@@ -44,8 +54,30 @@ public class Application {
         }
     }
 
+    // flags may come in any order, before or after the script, false when the arguments make no sense
+    boolean parse(String[] args) {
+        boolean backendChosen = false;
+        for (String arg : args) {
+            if ("--vm".equals(arg) || "--jit".equals(arg)) {
+                if (backendChosen) return false;
+                backend = "--vm".equals(arg) ? Engine.Backend.BYTECODE : Engine.Backend.TIERED;
+                backendChosen = true;
+            } else if ("--stats".equals(arg)) {
+                stats = true;
+            } else if (arg.startsWith("--") || script != null) {
+                return false;
+            } else {
+                script = arg;
+            }
+        }
+        return true;
+    }
+
     public void run(String source) {
         engine.run(source);
+        if (stats) {
+            System.err.println(engine.getStats());
+        }
     }
 
     private void loadSource(String file) throws IOException {
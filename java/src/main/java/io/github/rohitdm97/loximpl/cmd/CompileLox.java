@@ -0,0 +1,136 @@
+package io.github.rohitdm97.loximpl.cmd;
+
+import io.github.rohitdm97.loximpl.core.AotCompiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+// compiles a script into a runnable jar, which carries the runtime classes and expects log4j in lib/ next to it
+public class CompileLox {
+    private static final String RUNTIME = removeLast(CompileLox.class.getPackageName()).replace('.', '/') + "/";
+    private static final String TOOLS = CompileLox.class.getPackageName().replace('.', '/') + "/";
+    // libraries the runtime logs errors with
+    private static final List<String> LIBRARIES = List.of(
+            "org.apache.logging.log4j.LogManager",
+            "org.apache.logging.log4j.core.Logger"
+    );
+
+    public static void main(String[] args) throws IOException, URISyntaxException, ClassNotFoundException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: compile-lox <script> [output jar]");
+            System.exit(64);
+        }
+
+        final Path script = Paths.get(args[0]);
+        final String name = scriptName(script);
+        final Path output = args.length == 2 ? Paths.get(args[1]) : script.resolveSibling(name + ".jar");
+
+        final AotCompiler compiler = new AotCompiler(name);
+        final Map<String, byte[]> classes = compiler.compile(Files.readString(script));
+        if (classes == null) {
+            if (compiler.getUnsupported() != null) {
+                System.err.println("Cannot compile " + script + " ahead of time, " + compiler.getUnsupported()
+                        + ". Run it with the interpreter instead.");
+            }
+            System.exit(65);
+        }
+
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, compiler.mainClass());
+        attributes.put(Attributes.Name.CLASS_PATH, classPath());
+
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(output), manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+            copyRuntime(jar);
+        }
+        System.out.println("Wrote " + output);
+    }
+
+    // file name without the extension, made into a Java identifier
+    private static String scriptName(Path script) {
+        String name = script.getFileName().toString();
+        if (name.endsWith(".lox")) {
+            name = name.substring(0, name.length() - ".lox".length());
+        }
+        final StringBuilder identifier = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            identifier.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return identifier.toString();
+    }
+
+    private static String classPath() throws ClassNotFoundException, URISyntaxException {
+        final List<String> jars = new ArrayList<>();
+        for (String library : LIBRARIES) {
+            final Path location = location(Class.forName(library));
+            jars.add("lib/" + location.getFileName());
+        }
+        return String.join(" ", jars);
+    }
+
+    // classes of the interpreter the compiled script runs on, this tool is left out
+    private static void copyRuntime(JarOutputStream jar) throws IOException, URISyntaxException {
+        final Path location = location(AotCompiler.class);
+        if (Files.isDirectory(location)) {
+            try (Stream<Path> files = Files.walk(location.resolve(RUNTIME))) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    final String entry = location.relativize(file).toString().replace('\\', '/');
+                    if (entry.startsWith(TOOLS)) continue;
+                    try (InputStream in = Files.newInputStream(file)) {
+                        copy(jar, entry, in);
+                    }
+                }
+            }
+            return;
+        }
+
+        try (JarFile runtime = new JarFile(location.toFile())) {
+            final Enumeration<JarEntry> entries = runtime.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().startsWith(RUNTIME) || entry.getName().startsWith(TOOLS)) {
+                    continue;
+                }
+                try (InputStream in = runtime.getInputStream(entry)) {
+                    copy(jar, entry.getName(), in);
+                }
+            }
+        }
+    }
+
+    private static void copy(JarOutputStream jar, String entry, InputStream in) throws IOException {
+        jar.putNextEntry(new JarEntry(entry));
+        in.transferTo(jar);
+        jar.closeEntry();
+    }
+
+    private static Path location(Class<?> type) throws URISyntaxException {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static String removeLast(String packageName) {
+        return packageName.substring(0, packageName.lastIndexOf('.'));
+    }
+
+}
@@ -16,30 +16,31 @@ public class GenerateAst {
         String outputDir = args[0];
         String packageName = removeLast(GenerateAst.class.getPackageName()) + ".core";
 
+        // fields after the second ':' are not final, they are filled in after parsing
         defineAst(outputDir, packageName, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
-                "Get      : Expr object, Token name",
+                "Assign   : Token name, Expr value : int local = -1, int upvalue = -1",
+                "Binary   : Expr left, Token operator, Expr right : BinaryNode node = BinaryNode.UNINITIALIZED",
+                "Call     : Expr callee, Token paren, List<Expr> arguments : boolean tail = false",
+                "Get      : Expr object, Token name : InlineCache cache = new InlineCache.Get()",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
-                "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "Set      : Expr object, Token name, Expr value : InlineCache cache = new InlineCache.Set()",
+                "Super    : Token keyword, Token method : int local = -1, int upvalue = -1, int thisLocal = -1, int thisUpvalue = -1",
+                "This     : Token keyword : int local = -1, int upvalue = -1",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name : int local = -1, int upvalue = -1"
         ));
 
         defineAst(outputDir, packageName, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Block      : List<Stmt> statements : boolean inlined = false, int frameSize = 0, int firstSlot = 0, boolean closesUpvalues = false",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods : int slot = 0, Capture[] captures = Capture.NONE",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body : int slot = 0, int frameSize = 0, Capture[] captures = Capture.NONE, JitProfile profile = new JitProfile()",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
+                "Var        : Token name, Expr initializer : int slot = 0",
                 "While      : Expr condition, Stmt body"
         ));
     }
@@ -67,7 +68,8 @@ public class GenerateAst {
             final String[] splits = type.split(":");
             String className = splits[0].trim();
             String fields = splits[1].trim();
-            defineType(writer, baseName, className, fields);
+            String mutableFields = splits.length > 2 ? splits[2].trim() : null;
+            defineType(writer, baseName, className, fields, mutableFields);
         }
 
         // the base accept() method
@@ -99,7 +101,7 @@ public class GenerateAst {
 
     private static void defineType(
             IndentWriter writer,
-            String baseName, String className, String fieldList
+            String baseName, String className, String fieldList, String mutableFieldList
     ) {
         writer.println("static class " + className + " extends " + baseName + " {");
         writer.indent();
@@ -130,6 +132,11 @@ public class GenerateAst {
         for (String field : fields) {
             writer.println("final " + field + ";");
         }
+        if (mutableFieldList != null) {
+            for (String field : mutableFieldList.split(", ")) {
+                writer.println(field + ";");
+            }
+        }
 
         writer.unindent("}");
     }
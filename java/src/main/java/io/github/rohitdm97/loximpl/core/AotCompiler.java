@@ -0,0 +1,341 @@
+package io.github.rohitdm97.loximpl.core;
+
+import lombok.Getter;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compiles a whole script to class files ahead of time, used by the compile-lox tool
+ * <p>
+ * The top level code, every function and every method become classes made by the {@link JitCompiler}, so a
+ * compiled script runs like one whose functions were all compiled by the {@link Jit} on their first call. That
+ * is one closure-shaped class per function and not one class per Lox class with a static method per function,
+ * the Jit already knows how to compile closures and this way both share a single code generator. The main class
+ * rebuilds the tokens and AST nodes those classes take as constants and runs the script on a tiered
+ * {@link Engine}, nothing is scanned, parsed or resolved at startup. The generated classes live in the package of
+ * the runtime, they need the classes of this package on the class path.
+ * <p>
+ * There is no interpreter to fall back to, a script using what the Jit does not compile or with a function over
+ * the 64KB of bytecode a JVM method may hold is not compiled at all, {@link #getUnsupported} tells why.
+ */
+public class AotCompiler {
+    private static final String PACKAGE = Type.getInternalName(AotCompiler.class).replace("AotCompiler", "");
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+    private static final String ARRAY_LIST = Type.getInternalName(ArrayList.class);
+    private static final String CAPTURE = Type.getInternalName(Capture.class);
+
+    private final String simpleName;
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    private final List<Unit> units = new ArrayList<>();
+    private final Map<Stmt.Function, Unit> functions = new IdentityHashMap<>();
+    // what is being compiled and where it starts, for the error when it is too large
+    private String compiling = "the script";
+    private int line = 1;
+    // why the script could not be compiled although it has no errors, null when it could
+    @Getter
+    private String unsupported;
+
+    // name is the name of the script, it must be a valid Java identifier
+    public AotCompiler(String name) {
+        this.simpleName = "Lox$" + name;
+    }
+
+    // binary name of the class with the main method
+    public String mainClass() {
+        return (PACKAGE + simpleName).replace('/', '.');
+    }
+
+    // class files by internal name, null when the script has errors, they are reported already
+    public Map<String, byte[]> compile(String source) {
+        final Engine engine = new Engine();
+        final List<Stmt> statements = engine.analyze(source);
+        if (statements == null) return null;
+
+        try {
+            compiling = "the script";
+            line = 1;
+            final Unit script = unit(new JitCompiler(statements, simpleName + "$script"));
+            line = 1;
+            classes.put(PACKAGE + simpleName, mainClass(script));
+        } catch (JitCompiler.Unsupported e) {
+            unsupported = compiling + ": " + e.getMessage();
+        } catch (MethodTooLargeException | ClassTooLargeException e) {
+            // the main class rebuilds the constants of every function
+            unsupported = "the script has more constants than a JVM class holds";
+        }
+        if (unsupported != null) {
+            // unlike the Jit there is no Interpreter to fall back to
+            engine.compileError("Cannot compile ahead of time, " + unsupported, line);
+            return null;
+        }
+        return classes;
+    }
+
+    private Unit unit(JitCompiler compiler) {
+        final Unit unit = new Unit(units.size(), compiler.className());
+        units.add(unit);
+        classes.put(unit.className, compiler.compile());
+        unit.constants = Arrays.asList(compiler.constants());
+
+        // closures and classes the code creates are compiled as well
+        for (Object constant : unit.constants) {
+            if (constant instanceof Stmt.Function) {
+                function((Stmt.Function) constant, false, ((Stmt.Function) constant).name.lexeme);
+            } else if (constant instanceof Stmt.Class) {
+                final Stmt.Class klass = (Stmt.Class) constant;
+                for (Stmt.Function method : klass.methods) {
+                    function(method, true, klass.name.lexeme + "$" + method.name.lexeme);
+                }
+            }
+        }
+        return unit;
+    }
+
+    private void function(Stmt.Function function, boolean isMethod, String name) {
+        if (functions.containsKey(function)) return;
+        String className = simpleName + "$" + name;
+        if (classes.containsKey(PACKAGE + className)) {
+            className += "$" + units.size();
+        }
+        compiling = "<fn " + function.name.lexeme + ">";
+        line = function.name.line;
+        functions.put(function, unit(new JitCompiler(function, isMethod, className)));
+    }
+
+    private byte[] mainClass(Unit script) {
+        final String className = PACKAGE + simpleName;
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null,
+                Type.getInternalName(Object.class), null);
+
+        final MethodVisitor main = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main",
+                "([Ljava/lang/String;)V", null, null);
+        main.visitCode();
+        // compiled functions only run on an engine with a Jit, their declarations have no body to interpret
+        main.visitTypeInsn(Opcodes.NEW, Type.getInternalName(Engine.class));
+        main.visitInsn(Opcodes.DUP);
+        main.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(Engine.Backend.class), Engine.Backend.TIERED.name(),
+                Type.getDescriptor(Engine.Backend.class));
+        main.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Engine.class), "<init>",
+                Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Engine.Backend.class)), false);
+        newUnit(main, className, script);
+        main.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Engine.class), "run",
+                Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(CompiledFunction.class)), false);
+        main.visitInsn(Opcodes.RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+
+        for (Unit unit : units) {
+            constants(writer, className, unit);
+        }
+        for (Map.Entry<Stmt.Function, Unit> entry : functions.entrySet()) {
+            function(writer, className, entry.getKey(), entry.getValue());
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void newUnit(MethodVisitor mv, String className, Unit unit) {
+        mv.visitTypeInsn(Opcodes.NEW, unit.className);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, "constants$" + unit.index, "()[" + OBJECT_DESC, false);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, unit.className, "<init>", "([" + OBJECT_DESC + ")V", false);
+    }
+
+    // one method per unit keeps each of them far from the size limit of a method
+    private void constants(ClassWriter writer, String className, Unit unit) {
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+                "constants$" + unit.index, "()[" + OBJECT_DESC, null, null);
+        mv.visitCode();
+        JitCompiler.pushInt(mv, unit.constants.size());
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, Type.getInternalName(Object.class));
+        for (int i = 0; i < unit.constants.size(); i++) {
+            mv.visitInsn(Opcodes.DUP);
+            JitCompiler.pushInt(mv, i);
+            constant(mv, className, unit.constants.get(i));
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // the declaration only needs what LoxFunction reads when its code is compiled already
+    private void function(ClassWriter writer, String className, Stmt.Function function, Unit unit) {
+        final String type = Type.getInternalName(Stmt.Function.class);
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+                "function$" + unit.index, "()L" + type + ";", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, type);
+        mv.visitInsn(Opcodes.DUP);
+        token(mv, function.name);
+        list(mv, function.params, param -> token(mv, param));
+        list(mv, List.of(), nothing -> { });
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", descriptor(Token.class, List.class, List.class), false);
+
+        mv.visitInsn(Opcodes.DUP);
+        JitCompiler.pushInt(mv, function.frameSize);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, type, "frameSize", "I");
+        mv.visitInsn(Opcodes.DUP);
+        captures(mv, function.captures);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, type, "captures", "[L" + CAPTURE + ";");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETFIELD, type, "profile", Type.getDescriptor(JitProfile.class));
+        newUnit(mv, className, unit);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(JitProfile.class), "code",
+                Type.getDescriptor(CompiledFunction.class));
+
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // rebuilds as much of a constant as the helpers of the Interpreter use
+    private void constant(MethodVisitor mv, String className, Object constant) {
+        if (constant instanceof Double || constant instanceof String) {
+            mv.visitLdcInsn(constant);
+            if (constant instanceof Double) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Double.class), "valueOf",
+                        "(D)" + Type.getDescriptor(Double.class), false);
+            }
+        } else if (constant instanceof Token) {
+            token(mv, (Token) constant);
+        } else if (constant instanceof Expr.Binary) {
+            node(mv, Expr.Binary.class, () -> {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                token(mv, ((Expr.Binary) constant).operator);
+                mv.visitInsn(Opcodes.ACONST_NULL);
+            }, Expr.class, Token.class, Expr.class);
+        } else if (constant instanceof Expr.Call) {
+            node(mv, Expr.Call.class, () -> {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                token(mv, ((Expr.Call) constant).paren);
+                list(mv, List.of(), nothing -> { });
+            }, Expr.class, Token.class, List.class);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitInsn(((Expr.Call) constant).tail ? Opcodes.ICONST_1 : Opcodes.ICONST_0);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(Expr.Call.class), "tail", "Z");
+        } else if (constant instanceof Expr.Get) {
+            node(mv, Expr.Get.class, () -> {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                token(mv, ((Expr.Get) constant).name);
+            }, Expr.class, Token.class);
+        } else if (constant instanceof Expr.Set) {
+            node(mv, Expr.Set.class, () -> {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                token(mv, ((Expr.Set) constant).name);
+                mv.visitInsn(Opcodes.ACONST_NULL);
+            }, Expr.class, Token.class, Expr.class);
+        } else if (constant instanceof Expr.Super) {
+            node(mv, Expr.Super.class, () -> {
+                token(mv, ((Expr.Super) constant).keyword);
+                token(mv, ((Expr.Super) constant).method);
+            }, Token.class, Token.class);
+        } else if (constant instanceof Stmt.Function) {
+            function(mv, className, (Stmt.Function) constant);
+        } else if (constant instanceof Stmt.Class) {
+            final Stmt.Class klass = (Stmt.Class) constant;
+            node(mv, Stmt.Class.class, () -> {
+                token(mv, klass.name);
+                if (klass.superclass == null) {
+                    mv.visitInsn(Opcodes.ACONST_NULL);
+                } else {
+                    node(mv, Expr.Variable.class, () -> token(mv, klass.superclass.name), Token.class);
+                }
+                list(mv, klass.methods, method -> function(mv, className, method));
+            }, Token.class, Expr.Variable.class, List.class);
+            mv.visitInsn(Opcodes.DUP);
+            captures(mv, klass.captures);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(Stmt.Class.class), "captures", "[L" + CAPTURE + ";");
+        } else {
+            throw new IllegalStateException("Unexpected constant " + constant);
+        }
+    }
+
+    private void function(MethodVisitor mv, String className, Stmt.Function function) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, "function$" + functions.get(function).index,
+                "()" + Type.getDescriptor(Stmt.Function.class), false);
+    }
+
+    private void node(MethodVisitor mv, Class<?> type, Runnable arguments, Class<?>... parameterTypes) {
+        mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(type));
+        mv.visitInsn(Opcodes.DUP);
+        arguments.run();
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(type), "<init>", descriptor(parameterTypes), false);
+    }
+
+    private void token(MethodVisitor mv, Token token) {
+        node(mv, Token.class, () -> {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(TokenType.class), token.type.name(),
+                    Type.getDescriptor(TokenType.class));
+            mv.visitLdcInsn(token.lexeme);
+            if (token.literal == null) {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+            } else {
+                constant(mv, null, token.literal);
+            }
+            JitCompiler.pushInt(mv, token.line);
+        }, TokenType.class, String.class, Object.class, int.class);
+    }
+
+    private void captures(MethodVisitor mv, Capture[] captures) {
+        JitCompiler.pushInt(mv, captures.length);
+        mv.visitTypeInsn(Opcodes.ANEWARRAY, CAPTURE);
+        for (int i = 0; i < captures.length; i++) {
+            mv.visitInsn(Opcodes.DUP);
+            JitCompiler.pushInt(mv, i);
+            final Capture capture = captures[i];
+            node(mv, Capture.class, () -> {
+                mv.visitInsn(capture.local ? Opcodes.ICONST_1 : Opcodes.ICONST_0);
+                JitCompiler.pushInt(mv, capture.index);
+            }, boolean.class, int.class);
+            mv.visitInsn(Opcodes.AASTORE);
+        }
+    }
+
+    private <T> void list(MethodVisitor mv, List<T> items, Consumer<T> item) {
+        mv.visitTypeInsn(Opcodes.NEW, ARRAY_LIST);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ARRAY_LIST, "<init>", "()V", false);
+        for (T value : items) {
+            mv.visitInsn(Opcodes.DUP);
+            item.accept(value);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ARRAY_LIST, "add", "(" + OBJECT_DESC + ")Z", false);
+            mv.visitInsn(Opcodes.POP);
+        }
+    }
+
+    private static String descriptor(Class<?>... parameterTypes) {
+        final Type[] types = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            types[i] = Type.getType(parameterTypes[i]);
+        }
+        return Type.getMethodDescriptor(Type.VOID_TYPE, types);
+    }
+
+    // one class made by the JitCompiler
+    private static class Unit {
+        final int index;
+        final String className;
+        List<Object> constants;
+
+        Unit(int index, String className) {
+            this.index = index;
+            this.className = className;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Executable form of an {@link Expr.Binary}, every node starts {@link #UNINITIALIZED}
+ * <p>
+ * On its first execution a node rewrites itself into the form specialized for the operand types it sees, like
+ * number addition or string concatenation. When a later execution breaks that assumption the node falls back to
+ * {@link Generic} for good, so a site never flip-flops between specializations. Nodes hold no state, the rewrite
+ * only swaps the instance referenced by {@link Expr.Binary#node}.
+ * <p>
+ * Number specializations evaluate their operands through {@link Interpreter#evaluateDouble}, so nested
+ * arithmetic like {@code a * b + c} passes primitive doubles around and only the final result gets boxed.
+ */
+abstract class BinaryNode {
+    static final BinaryNode UNINITIALIZED = new Uninitialized();
+    private static final BinaryNode GENERIC = new Generic();
+
+    private static final BinaryNode ADD = new ArithmeticNode() {
+        @Override
+        double applyDouble(double left, double right) {
+            return left + right;
+        }
+    };
+    private static final BinaryNode SUBTRACT = new ArithmeticNode() {
+        @Override
+        double applyDouble(double left, double right) {
+            return left - right;
+        }
+    };
+    private static final BinaryNode MULTIPLY = new ArithmeticNode() {
+        @Override
+        double applyDouble(double left, double right) {
+            return left * right;
+        }
+    };
+    private static final BinaryNode DIVIDE = new ArithmeticNode() {
+        @Override
+        double applyDouble(double left, double right) {
+            return left / right;
+        }
+    };
+    private static final BinaryNode GREATER = new DoubleNode() {
+        @Override
+        Object apply(double left, double right) {
+            return left > right;
+        }
+    };
+    private static final BinaryNode GREATER_EQUAL = new DoubleNode() {
+        @Override
+        Object apply(double left, double right) {
+            return left >= right;
+        }
+    };
+    private static final BinaryNode LESS = new DoubleNode() {
+        @Override
+        Object apply(double left, double right) {
+            return left < right;
+        }
+    };
+    private static final BinaryNode LESS_EQUAL = new DoubleNode() {
+        @Override
+        Object apply(double left, double right) {
+            return left <= right;
+        }
+    };
+    private static final BinaryNode CONCAT = new BinaryNode() {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof String && right instanceof String) {
+                return (String) left + (String) right;
+            }
+            return generalize(expr).execute(expr, left, right);
+        }
+    };
+    private static final BinaryNode EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return Interpreter.isEqual(left, right);
+        }
+    };
+    private static final BinaryNode NOT_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return !Interpreter.isEqual(left, right);
+        }
+    };
+
+    abstract Object execute(Expr.Binary expr, Object left, Object right);
+
+    // for code compiled by the Jit, which evaluates the operands itself
+    static Object dispatch(Expr.Binary expr, Object left, Object right) {
+        return expr.node.execute(expr, left, right);
+    }
+
+    // whether every execution so far saw two numbers
+    boolean speculatesNumbers() {
+        return false;
+    }
+
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+        final Object left = interpreter.evaluate(expr.left);
+        final Object right = interpreter.evaluate(expr.right);
+        return execute(expr, left, right);
+    }
+
+    double executeDouble(Interpreter interpreter, Expr.Binary expr) throws UnexpectedResult {
+        final Object result = execute(interpreter, expr);
+        if (result instanceof Double) {
+            return (double) result;
+        }
+        throw new UnexpectedResult(result);
+    }
+
+    private static BinaryNode specialize(Expr.Binary expr, Object left, Object right) {
+        final boolean numbers = left instanceof Double && right instanceof Double;
+        BinaryNode node = GENERIC;
+        switch (expr.operator.type) {
+            case PLUS:
+                if (numbers) {
+                    node = ADD;
+                } else if (left instanceof String && right instanceof String) {
+                    node = CONCAT;
+                }
+                break;
+            case MINUS: if (numbers) node = SUBTRACT; break;
+            case STAR: if (numbers) node = MULTIPLY; break;
+            case SLASH: if (numbers) node = DIVIDE; break;
+            case GREATER: if (numbers) node = GREATER; break;
+            case GREATER_EQUAL: if (numbers) node = GREATER_EQUAL; break;
+            case LESS: if (numbers) node = LESS; break;
+            case LESS_EQUAL: if (numbers) node = LESS_EQUAL; break;
+            case EQUAL_EQUAL: node = EQUAL; break;
+            case BANG_EQUAL: node = NOT_EQUAL; break;
+        }
+        expr.node = node;
+        return node;
+    }
+
+    private static BinaryNode generalize(Expr.Binary expr) {
+        expr.node = GENERIC;
+        return GENERIC;
+    }
+
+    private static class Uninitialized extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return specialize(expr, left, right).execute(expr, left, right);
+        }
+    }
+
+    // both operands are expected to be numbers
+    private abstract static class DoubleNode extends BinaryNode {
+        @Override
+        final Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return apply((double) left, (double) right);
+            }
+            return generalize(expr).execute(expr, left, right);
+        }
+
+        @Override
+        final Object execute(Interpreter interpreter, Expr.Binary expr) {
+            final double left;
+            try {
+                left = interpreter.evaluateDouble(expr.left);
+            } catch (UnexpectedResult e) {
+                return generalize(expr).execute(expr, e.result, interpreter.evaluate(expr.right));
+            }
+            final double right;
+            try {
+                right = interpreter.evaluateDouble(expr.right);
+            } catch (UnexpectedResult e) {
+                return generalize(expr).execute(expr, left, e.result);
+            }
+            return apply(left, right);
+        }
+
+        abstract Object apply(double left, double right);
+
+        @Override
+        final boolean speculatesNumbers() {
+            return true;
+        }
+    }
+
+    // number operands giving a number, which nested arithmetic can take without boxing
+    private abstract static class ArithmeticNode extends DoubleNode {
+        @Override
+        final double executeDouble(Interpreter interpreter, Expr.Binary expr) throws UnexpectedResult {
+            final double left;
+            try {
+                left = interpreter.evaluateDouble(expr.left);
+            } catch (UnexpectedResult e) {
+                return expectDouble(generalize(expr).execute(expr, e.result, interpreter.evaluate(expr.right)));
+            }
+            final double right;
+            try {
+                right = interpreter.evaluateDouble(expr.right);
+            } catch (UnexpectedResult e) {
+                return expectDouble(generalize(expr).execute(expr, left, e.result));
+            }
+            return applyDouble(left, right);
+        }
+
+        @Override
+        final Object apply(double left, double right) {
+            return applyDouble(left, right);
+        }
+
+        abstract double applyDouble(double left, double right);
+
+        private static double expectDouble(Object result) throws UnexpectedResult {
+            if (result instanceof Double) {
+                return (double) result;
+            }
+            throw new UnexpectedResult(result);
+        }
+    }
+
+    // handles every operator and operand type, including the runtime errors
+    private static class Generic extends BinaryNode {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            switch (expr.operator.type) {
+                case GREATER:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left > (double) right;
+                case GREATER_EQUAL:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left >= (double) right;
+                case LESS:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left < (double) right;
+                case LESS_EQUAL:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left <= (double) right;
+
+                case MINUS:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left - (double) right;
+                case PLUS:
+                    if (left instanceof Double && right instanceof Double) {
+                        return (double) left + (double) right;
+                    }
+
+                    if (left instanceof String && right instanceof String) {
+                        return (String) left + (String) right;
+                    }
+
+                    throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                case SLASH:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left / (double) right;
+                case STAR:
+                    checkNumberOperands(expr.operator, left, right);
+                    return (double) left * (double) right;
+
+                case BANG_EQUAL:
+                    return !Interpreter.isEqual(left, right);
+                case EQUAL_EQUAL:
+                    return Interpreter.isEqual(left, right);
+            }
+
+            // Unreachable.
+            return null;
+        }
+
+        private void checkNumberOperands(Token operator, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return;
+
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Where a closure takes one of its {@link Upvalue}s from when it is created, computed by the {@link Resolver}
+ * <p>
+ * Either a slot of the frame the closure is created in, or an upvalue that frame already has.
+ */
+final class Capture {
+    static final Capture[] NONE = new Capture[0];
+
+    final boolean local;
+    // slot when local, else index into the upvalues of the enclosing frame
+    final int index;
+
+    Capture(boolean local, int index) {
+        this.local = local;
+        this.index = index;
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled sequence of {@link OpCode} instructions along with the source line of every byte and the constant pool
+ */
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+    // constants as an array, available once the chunk is sealed
+    Object[] pool;
+    // strings and numbers are de-duplicated, names of globals and properties are repeated a lot
+    private final Map<Object, Integer> interned = new HashMap<>();
+
+    void write(byte value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = value;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        if (value instanceof String || value instanceof Double) {
+            final Integer existing = interned.get(value);
+            if (existing != null) return existing;
+            interned.put(value, constants.size());
+        }
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    // trims the buffers once compilation is finished
+    void seal() {
+        code = Arrays.copyOf(code, count);
+        lines = Arrays.copyOf(lines, count);
+        pool = constants.toArray();
+    }
+
+}
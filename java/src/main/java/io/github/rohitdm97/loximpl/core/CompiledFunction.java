@@ -0,0 +1,11 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Body of a {@link LoxFunction} compiled to JVM bytecode by the {@link Jit}
+ * <p>
+ * The frame comes filled in with the receiver and arguments like for the {@link Interpreter}. The result is the
+ * return value, or {@link TailCall#PENDING} when the function ends with a call in tail position.
+ */
+interface CompiledFunction {
+    Object invoke(Interpreter interpreter, Frame frame);
+}
@@ -0,0 +1,41 @@
+package io.github.rohitdm97.loximpl.core;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A script scanned, parsed, resolved and optimized once by {@link Engine#compile}, to be run any number of times
+ * <p>
+ * Scripts are immutable and may run on several threads at once, every run has an Engine of its own. Runs share
+ * what gets learned while executing the AST, like the specializations of {@link BinaryNode}s, the entries of
+ * {@link InlineCache}s and the functions compiled by the {@link Jit}, all of which tolerate racing executions.
+ * Each run makes its own classes and functions, but those of one declaration share their {@link Shape}s and
+ * call site guards, so what one run learned still holds for the next and no run keeps the values of another.
+ */
+public final class CompiledScript {
+    // the backend of the engine which compiled the script, any engine can run it
+    @Getter
+    private final Engine.Backend backend;
+    final List<Stmt> statements;
+    // null unless compiled for the bytecode backend
+    final Obj.Function function;
+
+    CompiledScript(Engine.Backend backend, List<Stmt> statements, Obj.Function function) {
+        this.backend = backend;
+        this.statements = Collections.unmodifiableList(statements);
+        this.function = function;
+    }
+
+    // runs on globals of its own, nothing defined by other runs is visible
+    public void run() {
+        run(Environment.createGlobal());
+    }
+
+    // runs with the given globals, an environment must not be used by two runs at the same time
+    public void run(Environment globals) {
+        new Engine(backend, globals).run(this);
+    }
+
+}
@@ -0,0 +1,633 @@
+package io.github.rohitdm97.loximpl.core;
+
+import io.github.rohitdm97.loximpl.error.ErrorReport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the resolved AST into {@link Chunk}s for the {@link VirtualMachine}, modelled on c/compiler.c
+ * <p>
+ * The {@link Resolver} has already reported the static errors, so this only has to deal with the limits of the
+ * instruction encoding. Local variables live in stack slots and captured ones are reached through upvalues.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_LOCALS = 256;
+    private static final int MAX_UPVALUES = 256;
+    private static final int MAX_CONSTANTS = 65536;
+    private static final int MAX_JUMP = 65535;
+
+    private final ErrorReport report;
+    private FunctionState current;
+    private ClassState currentClass;
+    // line of the most recently seen token, literals do not carry one
+    private int line = 1;
+
+    Compiler(ErrorReport report) {
+        this.report = report;
+    }
+
+    Obj.Function compile(List<Stmt> statements) {
+        current = new FunctionState(null, new Obj.Function(null), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        return endFunction();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void error(String message) {
+        report.error(message, line, "");
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        declareVariable(stmt.name.lexeme);
+        emitOpWithShort(OpCode.CLASS, makeConstant(stmt.name.lexeme));
+        defineVariable(stmt.name.lexeme);
+
+        final ClassState classState = new ClassState(currentClass);
+        currentClass = classState;
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+            beginScope();
+            addLocal("super", false);
+            markInitialized();
+
+            namedVariable(stmt.name);
+            line = stmt.superclass.name.line;
+            emitOp(OpCode.INHERIT);
+            classState.hasSuperclass = true;
+        }
+
+        namedVariable(stmt.name);
+        for (Stmt.Function method : stmt.methods) {
+            final FunctionType type = "init".equals(method.name.lexeme)
+                    ? FunctionType.INITIALIZER
+                    : FunctionType.METHOD;
+            function(method, type);
+            line = method.name.line;
+            emitOpWithShort(OpCode.METHOD, makeConstant(method.name.lexeme));
+        }
+        emitOp(OpCode.POP);
+
+        if (classState.hasSuperclass) {
+            endScope();
+        }
+        currentClass = classState.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        declareVariable(stmt.name.lexeme);
+        // a function can refer to itself, so it is usable before its body is compiled
+        markInitialized();
+        function(stmt, FunctionType.FUNCTION);
+        defineVariable(stmt.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        final int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        final int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitOp(OpCode.POP);
+        if (stmt.elseBranch != null) {
+            compile(stmt.elseBranch);
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emitOp(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        final boolean checked = stmt.initializer == null;
+        if (checked) {
+            emitOp(OpCode.UNINITIALIZED);
+        } else {
+            compile(stmt.initializer);
+        }
+        // declared after the initializer, the resolver already rejects reading a variable in its own initializer
+        line = stmt.name.line;
+        if (current.scopeDepth > 0) {
+            addLocal(stmt.name.lexeme, checked);
+        }
+        defineVariable(stmt.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        final int loopStart = currentChunk().count;
+        compile(stmt.condition);
+        final int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        final String name = expr.name.lexeme;
+
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitOpWithByte(OpCode.SET_LOCAL, arg);
+            return null;
+        }
+        arg = resolveUpvalue(current, name);
+        if (arg != -1) {
+            emitOpWithByte(OpCode.SET_UPVALUE, arg);
+            return null;
+        }
+        emitOpWithShort(OpCode.SET_GLOBAL, makeConstant(name));
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG_EQUAL: emitOp(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emitOp(OpCode.EQUAL); break;
+            case GREATER: emitOp(OpCode.GREATER); break;
+            case GREATER_EQUAL: emitOp(OpCode.GREATER_EQUAL); break;
+            case LESS: emitOp(OpCode.LESS); break;
+            case LESS_EQUAL: emitOp(OpCode.LESS_EQUAL); break;
+            case PLUS: emitOp(OpCode.ADD); break;
+            case MINUS: emitOp(OpCode.SUBTRACT); break;
+            case STAR: emitOp(OpCode.MULTIPLY); break;
+            case SLASH: emitOp(OpCode.DIVIDE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            // method calls skip creating the bound method
+            final Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            compileArguments(expr);
+            emitInvoke(expr.tail ? OpCode.TAIL_INVOKE : OpCode.INVOKE, get.name, expr);
+            return null;
+        }
+        if (expr.callee instanceof Expr.Super) {
+            final Expr.Super sup = (Expr.Super) expr.callee;
+            line = sup.keyword.line;
+            namedVariable(new Token(TokenType.THIS, "this", null, sup.keyword.line));
+            compileArguments(expr);
+            namedVariable(new Token(TokenType.SUPER, "super", null, sup.keyword.line));
+            emitInvoke(expr.tail ? OpCode.TAIL_SUPER_INVOKE : OpCode.SUPER_INVOKE, sup.method, expr);
+            return null;
+        }
+
+        compile(expr.callee);
+        compileArguments(expr);
+        line = expr.paren.line;
+        emitOpWithByte(expr.tail ? OpCode.TAIL_CALL : OpCode.CALL, expr.arguments.size());
+        return null;
+    }
+
+    private void compileArguments(Expr.Call expr) {
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+    }
+
+    // the opcode carries the line of the call, the name operand the line of the property for lookup errors
+    private void emitInvoke(byte op, Token name, Expr.Call expr) {
+        final int constant = makeConstant(name.lexeme);
+        line = expr.paren.line;
+        emitOp(op);
+        line = name.line;
+        emitShort(constant);
+        line = expr.paren.line;
+        emitByte(expr.arguments.size());
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitOpWithShort(OpCode.GET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitOp(OpCode.NIL);
+        } else if (Boolean.TRUE.equals(expr.value)) {
+            emitOp(OpCode.TRUE);
+        } else if (Boolean.FALSE.equals(expr.value)) {
+            emitOp(OpCode.FALSE);
+        } else {
+            emitOpWithShort(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type == TokenType.OR) {
+            final int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            final int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            final int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitOp(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitOpWithShort(OpCode.SET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        namedVariable(new Token(TokenType.THIS, "this", null, expr.keyword.line));
+        namedVariable(new Token(TokenType.SUPER, "super", null, expr.keyword.line));
+        line = expr.method.line;
+        emitOpWithShort(OpCode.GET_SUPER, makeConstant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG: emitOp(OpCode.NOT); break;
+            case MINUS: emitOp(OpCode.NEGATE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name);
+        return null;
+    }
+
+    private void namedVariable(Token name) {
+        line = name.line;
+        int arg = resolveLocal(current, name.lexeme);
+        if (arg != -1) {
+            if (current.locals[arg].checked) {
+                emitOpWithByte(OpCode.GET_LOCAL_CHECKED, arg);
+                emitShort(makeConstant(name.lexeme));
+            } else {
+                emitOpWithByte(OpCode.GET_LOCAL, arg);
+            }
+            return;
+        }
+        arg = resolveUpvalue(current, name.lexeme);
+        if (arg != -1) {
+            if (current.upvalues.get(arg).checked) {
+                emitOpWithByte(OpCode.GET_UPVALUE_CHECKED, arg);
+                emitShort(makeConstant(name.lexeme));
+            } else {
+                emitOpWithByte(OpCode.GET_UPVALUE, arg);
+            }
+            return;
+        }
+        emitOpWithShort(OpCode.GET_GLOBAL, makeConstant(name.lexeme));
+    }
+
+    private void function(Stmt.Function declaration, FunctionType type) {
+        final FunctionState state = new FunctionState(current, new Obj.Function(declaration.name.lexeme), type);
+        current = state;
+        beginScope();
+        state.function.arity = declaration.params.size();
+        for (Token param : declaration.params) {
+            line = param.line;
+            addLocal(param.lexeme, false);
+            markInitialized();
+        }
+        for (Stmt statement : declaration.body) {
+            compile(statement);
+        }
+        final Obj.Function function = endFunction();
+
+        line = declaration.name.line;
+        emitOpWithShort(OpCode.CLOSURE, makeConstant(function));
+        for (UpvalueRef upvalue : state.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte(upvalue.index);
+        }
+    }
+
+    private Obj.Function endFunction() {
+        emitReturn();
+        final Obj.Function function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        function.chunk.seal();
+        current = current.enclosing;
+        return function;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        while (current.localCount > 0 && current.locals[current.localCount - 1].depth > current.scopeDepth) {
+            if (current.locals[current.localCount - 1].captured) {
+                emitOp(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitOp(OpCode.POP);
+            }
+            current.localCount--;
+        }
+    }
+
+    private void declareVariable(String name) {
+        if (current.scopeDepth == 0) return;
+        addLocal(name, false);
+    }
+
+    private void defineVariable(String name) {
+        if (current.scopeDepth > 0) {
+            markInitialized();
+            return;
+        }
+        emitOpWithShort(OpCode.DEFINE_GLOBAL, makeConstant(name));
+    }
+
+    private void addLocal(String name, boolean checked) {
+        if (current.localCount == MAX_LOCALS) {
+            error("Too many local variables in function.");
+            return;
+        }
+        current.locals[current.localCount++] = new Local(name, -1, checked);
+    }
+
+    private void markInitialized() {
+        if (current.scopeDepth == 0) return;
+        current.locals[current.localCount - 1].depth = current.scopeDepth;
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.localCount - 1; i >= 0; i--) {
+            final Local local = state.locals[i];
+            // a local still being declared is not visible, the resolver reports reading it in its own initializer
+            if (local.depth != -1 && name.equals(local.name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+
+        final int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            final Local captured = state.enclosing.locals[local];
+            captured.captured = true;
+            return addUpvalue(state, local, true, captured.checked);
+        }
+
+        final int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false, state.enclosing.upvalues.get(upvalue).checked);
+        }
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal, boolean checked) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            final UpvalueRef upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        if (state.upvalues.size() == MAX_UPVALUES) {
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new UpvalueRef(index, isLocal, checked));
+        return state.upvalues.size() - 1;
+    }
+
+    private Chunk currentChunk() {
+        return current.function.chunk;
+    }
+
+    private int makeConstant(Object value) {
+        final int constant = currentChunk().addConstant(value);
+        if (constant >= MAX_CONSTANTS) {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private void emitByte(int value) {
+        currentChunk().write((byte) value, line);
+    }
+
+    private void emitShort(int value) {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    private void emitOp(byte op) {
+        currentChunk().write(op, line);
+    }
+
+    private void emitOpWithByte(byte op, int operand) {
+        emitOp(op);
+        emitByte(operand);
+    }
+
+    private void emitOpWithShort(byte op, int operand) {
+        emitOp(op);
+        emitShort(operand);
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitOpWithByte(OpCode.GET_LOCAL, 0);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+    }
+
+    private int emitJump(byte op) {
+        emitOp(op);
+        emitShort(0xffff);
+        return currentChunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the jump offset itself
+        final int jump = currentChunk().count - offset - 2;
+        if (jump > MAX_JUMP) {
+            error("Too much code to jump over.");
+        }
+        currentChunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        currentChunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitOp(OpCode.LOOP);
+        final int offset = currentChunk().count - loopStart + 2;
+        if (offset > MAX_JUMP) {
+            error("Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final Obj.Function function;
+        final FunctionType type;
+        final Local[] locals = new Local[MAX_LOCALS];
+        final List<UpvalueRef> upvalues = new ArrayList<>();
+        int localCount = 0;
+        int scopeDepth = 0;
+
+        FunctionState(FunctionState enclosing, Obj.Function function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+            // slot zero holds the receiver for methods, it is unnamed for functions and the script
+            final boolean isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            locals[localCount++] = new Local(isMethod ? "this" : "", 0, false);
+        }
+    }
+
+    private static class Local {
+        final String name;
+        // -1 until the variable is defined
+        int depth;
+        // declared without an initializer, reads have to check it was assigned
+        final boolean checked;
+        boolean captured = false;
+
+        Local(String name, int depth, boolean checked) {
+            this.name = name;
+            this.depth = depth;
+            this.checked = checked;
+        }
+    }
+
+    private static class UpvalueRef {
+        final int index;
+        final boolean isLocal;
+        final boolean checked;
+
+        UpvalueRef(int index, boolean isLocal, boolean checked) {
+            this.index = index;
+            this.isLocal = isLocal;
+            this.checked = checked;
+        }
+    }
+
+    private static class ClassState {
+        final ClassState enclosing;
+        boolean hasSuperclass = false;
+
+        ClassState(ClassState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        INITIALIZER,
+        METHOD
+    }
+
+}
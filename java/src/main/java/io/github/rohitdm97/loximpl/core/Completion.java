@@ -0,0 +1,14 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * How the execution of a statement ended, the interpreter hands it up until the statement list owning the
+ * control flow handles it
+ * <p>
+ * The value of a return travels separately, see {@link Interpreter#takeReturnValue()}.
+ */
+enum Completion {
+    NORMAL,
+    RETURN,
+    // the return value is a call still to be made, see TailCall
+    TAIL_CALL
+}
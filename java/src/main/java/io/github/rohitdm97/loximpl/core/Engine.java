@@ -1,50 +1,200 @@
 package io.github.rohitdm97.loximpl.core;
 
 import io.github.rohitdm97.loximpl.error.ErrorReport;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.PrintStream;
 import java.util.List;
 
+/**
+ * Runs Lox source on one of the {@link Backend}s
+ * <p>
+ * An engine, its globals and every value its scripts create belong to one thread at a time, an engine must not
+ * run two scripts at once. Engines share no mutable state with each other, so separate engines can run in
+ * parallel on as many threads as there are engines. {@link CompiledScript}s are the one thing meant to be
+ * shared, a script may run on several engines at the same time. Globals given to an engine belong to it
+ * until it is done with them. Fibers a script spawns run on threads of their own, a run waits for all of them
+ * before it returns, see {@link Fibers}.
+ */
 @Log4j2
 public class Engine {
     private final ErrorReport report;
+    private final Backend backend;
+    @Getter
+    private final Environment globals;
+    // created only for the tree-walking backends
     private final Interpreter interpreter;
+    // created only for the bytecode backend
+    private final VirtualMachine vm;
+    // null unless -Dlox.stats=true
+    private final Stats stats;
     private Status status = Status.INITIAL;
 
     public Engine() {
+        this(Backend.TREE_WALKER);
+    }
+
+    public Engine(Backend backend) {
+        this(backend, Environment.createGlobal());
+    }
+
+    // scripts run by this engine define their globals in the given environment
+    public Engine(Backend backend, Environment globals) {
         this.report = new ErrorReport(this, log);
-        this.interpreter = new Interpreter(this.report);
+        this.backend = backend;
+        this.globals = globals;
+        this.stats = Stats.ENABLED ? new Stats(backend != Backend.BYTECODE) : null;
+        this.interpreter = backend == Backend.BYTECODE
+                ? null
+                : new Interpreter(this.report, backend == Backend.TIERED ? new Jit() : null, stats, globals);
+        this.vm = backend == Backend.BYTECODE ? new VirtualMachine(this.report, stats, globals) : null;
     }
 
     public void run(String source) {
+        final CompiledScript script = compile(source);
+        if (script == null) return;
+        execute(script);
+    }
+
+    // runs the script on the globals of this engine, which keep what earlier runs defined
+    public void run(CompiledScript script) {
+        report.reset();
+        if (Stats.ENABLED) stats.reset();
+        execute(script);
+    }
+
+    // null when the source has errors, they are reported already
+    public CompiledScript compile(String source) {
+        final List<Stmt> optimized = analyze(source);
+        if (optimized == null) return null;
+
+        Obj.Function function = null;
+        if (backend == Backend.BYTECODE) {
+            function = bytecode(optimized);
+            if (function == null) return null;
+        }
+        return new CompiledScript(backend, optimized, function);
+    }
+
+    private void execute(CompiledScript script) {
+        if (backend == Backend.BYTECODE) {
+            // compiled for one of the tree-walkers
+            final Obj.Function function = script.function != null ? script.function : bytecode(script.statements);
+            if (function == null) return;
+            status = Status.RUN_STARTED;
+            begin();
+            vm.interpret(function);
+        } else {
+            status = Status.RUN_STARTED;
+            begin();
+            interpreter.interpret(script.statements);
+        }
+        end(Stats.Phase.RUN);
+        if (status == Status.RUNTIME_ERROR) {
+            report.dump();
+        }
+    }
+
+    // null when the compiler reported errors
+    private Obj.Function bytecode(List<Stmt> statements) {
+        begin();
+        final Obj.Function function = new Compiler(report).compile(statements);
+        end(Stats.Phase.COMPILE);
+        if (status == Status.ERROR) {
+            report.dump();
+            return null;
+        }
+        return function;
+    }
+
+    // where scripts print, null for System.out
+    public void setOutput(PrintStream out) {
+        if (vm != null) {
+            vm.out = out;
+        } else {
+            interpreter.out = out;
+        }
+    }
+
+    // runs a script compiled by the AotCompiler, there is nothing left to scan or resolve
+    void run(CompiledFunction script) {
+        if (interpreter == null || interpreter.jit == null) {
+            throw new IllegalStateException("Compiled scripts run on the tiered backend");
+        }
+        report.reset();
+        if (Stats.ENABLED) stats.reset();
+        status = Status.RUN_STARTED;
+        begin();
+        interpreter.interpret(script);
+        end(Stats.Phase.RUN);
+        if (status == Status.RUNTIME_ERROR) {
+            report.dump();
+        }
+    }
+
+    // null when the source has errors, they are reported already
+    // for errors found after analyze, by the AotCompiler
+    void compileError(String message, int line) {
+        report.error(message, line, "");
+        report.dump();
+    }
+
+    List<Stmt> analyze(String source) {
         report.reset();
         status = Status.INITIAL;
+        if (Stats.ENABLED) stats.reset();
 
+        begin();
         Scanner scanner = new Scanner(source, report);
         scanner.scan();
+        end(Stats.Phase.SCAN);
         if (status == Status.ERROR) {
             report.dump();
-            return;
+            return null;
         }
+        begin();
         Parser parser = new Parser(scanner.getTokens(), report);
         final List<Stmt> statements = parser.parse();
+        end(Stats.Phase.PARSE);
+        if (Stats.ENABLED) {
+            stats.tokens.add(scanner.getTokens().size());
+            stats.statements.add(Stats.count(statements));
+        }
         if (status == Status.ERROR) {
             report.dump();
-            return;
+            return null;
         }
-        Resolver resolver = new Resolver(interpreter, report);
+        begin();
+        Resolver resolver = new Resolver(report);
         resolver.resolve(statements);
+        end(Stats.Phase.RESOLVE);
         if (status == Status.ERROR) {
             report.dump();
-            return;
+            return null;
         }
+        begin();
+        final List<Stmt> optimized = new Optimizer().optimize(statements);
+        end(Stats.Phase.OPTIMIZE);
+        return optimized;
+    }
 
-        status = Status.RUN_STARTED;
-        interpreter.interpret(statements);
-        if (status == Status.RUNTIME_ERROR) {
-            report.dump();
-            return;
-        }
+    // phases and counters of the last run, null unless the JVM runs with -Dlox.stats=true
+    public Stats getStats() {
+        return stats;
+    }
+
+    private void begin() {
+        if (Stats.ENABLED) stats.begin();
+    }
+
+    private void end(Stats.Phase phase) {
+        if (Stats.ENABLED) stats.end(phase);
+    }
+
+    // whether the last compile or run reported errors
+    boolean hadError() {
+        return status == Status.ERROR || status == Status.RUNTIME_ERROR;
     }
 
     public void setHadError() {
@@ -66,6 +216,15 @@ public class Engine {
         }
     }
 
+    public enum Backend {
+        // walks the resolved AST, see Interpreter
+        TREE_WALKER,
+        // walks the AST until a function gets hot, then runs it as JVM bytecode, see Jit
+        TIERED,
+        // compiles the resolved AST to bytecode, see Compiler and VirtualMachine
+        BYTECODE
+    }
+
     private enum Status {
         INITIAL,
         ERROR,
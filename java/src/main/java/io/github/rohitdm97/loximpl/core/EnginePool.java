@@ -0,0 +1,174 @@
+package io.github.rohitdm97.loximpl.core;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed set of engines created up front, borrowed by one thread at a time to run scripts
+ * <p>
+ * The baseline script runs once when the pool is created, every engine starts with the globals it leaves behind.
+ * Releasing an engine restores its globals to that baseline in constant time, so a borrower sees the library
+ * definitions of the baseline but nothing earlier borrowers defined. The values of the baseline are shared by all
+ * engines, taking the snapshot freezes them, see {@link Freezer}. Setting a field of an instance the baseline made or
+ * assigning a variable one of its closures captured writes to a copy the borrowing engine keeps until it is
+ * released, a borrower can neither see what another did to them nor race with it. {@link #warmUp} runs scripts
+ * before the pool serves, so HotSpot and the {@link Jit} compile the hot paths ahead of the first borrower.
+ */
+public class EnginePool {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final int size;
+    private final BlockingQueue<Engine> idle;
+    // globals left by the baseline script
+    private final Environment.Snapshot baseline;
+    // engines borrowed at the moment, with the time they were borrowed at
+    private final Map<Engine, Long> borrowed = new ConcurrentHashMap<>();
+
+    private final long createdAt = System.nanoTime();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitedNanos = new LongAdder();
+    private final AtomicLong maxWaitedNanos = new AtomicLong();
+    // time engines spent borrowed, up to their last release
+    private final LongAdder busyNanos = new LongAdder();
+
+    public EnginePool(Engine.Backend backend, int size) {
+        this(backend, size, null);
+    }
+
+    // baseline may be null, then engines start with empty globals
+    public EnginePool(Engine.Backend backend, int size, String baseline) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool needs at least one engine");
+        }
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+
+        final Engine first = new Engine(backend);
+        if (baseline != null) {
+            first.run(baseline);
+            if (first.hadError()) {
+                throw new IllegalArgumentException("Baseline failed, the errors are reported");
+            }
+        }
+        this.baseline = first.getGlobals().snapshot();
+        idle.add(first);
+        for (int i = 1; i < size; i++) {
+            idle.add(new Engine(backend, Environment.fork(this.baseline)));
+        }
+    }
+
+    // runs the script on every engine, restoring their baselines after each run, what it prints is dropped
+    public void warmUp(CompiledScript script, int runs) {
+        final List<Engine> engines = new ArrayList<>();
+        idle.drainTo(engines);
+        for (Engine engine : engines) {
+            engine.setOutput(DISCARD);
+            for (int i = 0; i < runs; i++) {
+                engine.run(script);
+                engine.getGlobals().restore(baseline);
+            }
+            engine.setOutput(null);
+        }
+        idle.addAll(engines);
+    }
+
+    // waits until an engine is idle
+    public Engine borrow() throws InterruptedException {
+        final long start = System.nanoTime();
+        return borrowed(idle.take(), start);
+    }
+
+    // null when no engine got idle within the timeout
+    public Engine borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Engine engine = idle.poll(timeout, unit);
+        if (engine == null) {
+            timeouts.increment();
+            return null;
+        }
+        return borrowed(engine, start);
+    }
+
+    private Engine borrowed(Engine engine, long start) {
+        final long now = System.nanoTime();
+        final long waited = now - start;
+        borrows.increment();
+        waitedNanos.add(waited);
+        maxWaitedNanos.accumulateAndGet(waited, Math::max);
+        borrowed.put(engine, now);
+        return engine;
+    }
+
+    public void release(Engine engine) {
+        final Long since = borrowed.remove(engine);
+        if (since == null) {
+            throw new IllegalArgumentException("Engine is not borrowed from this pool");
+        }
+        busyNanos.add(System.nanoTime() - since);
+        engine.getGlobals().restore(baseline);
+        idle.add(engine);
+    }
+
+    // runs the script on an engine borrowed for just that
+    public void run(CompiledScript script) throws InterruptedException {
+        final Engine engine = borrow();
+        try {
+            engine.run(script);
+        } finally {
+            release(engine);
+        }
+    }
+
+    public Metrics metrics() {
+        final long now = System.nanoTime();
+        long busy = busyNanos.sum();
+        for (long since : borrowed.values()) {
+            busy += now - since;
+        }
+        final long elapsed = Math.max(1, now - createdAt);
+        return new Metrics(size, borrowed.size(), borrows.sum(), timeouts.sum(), waitedNanos.sum(),
+                maxWaitedNanos.get(), (double) busy / ((double) elapsed * size));
+    }
+
+    // counted since the pool was created
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Metrics {
+        private final int size;
+        // engines borrowed at the moment
+        private final int inUse;
+        private final long borrows;
+        // borrows that gave up waiting, they are not counted in borrows
+        private final long timeouts;
+        // time borrowers waited for an idle engine
+        private final long waitedNanos;
+        private final long maxWaitedNanos;
+        // share of the time engines were borrowed, between 0 and 1
+        private final double utilization;
+
+        public double averageWaitedNanos() {
+            return borrows == 0 ? 0 : (double) waitedNanos / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d in use, %d borrows, %d timeouts, waited %.3f ms on average and %.3f ms at most, %.1f%% utilized",
+                    inUse, size, borrows, timeouts, averageWaitedNanos() / 1e6, maxWaitedNanos / 1e6, utilization * 100);
+        }
+    }
+
+}
@@ -2,17 +2,45 @@ package io.github.rohitdm97.loximpl.core;
 
 import lombok.NonNull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Variables by name, used for the globals of a script
+ * <p>
+ * An environment can be frozen into a {@link Snapshot} and any number of environments can be forked from one. A
+ * forked environment reads through to its snapshot and keeps what it defines or assigns in a map of its own, so
+ * the variables it does not touch stay shared. Snapshots never change, environments forked from the same one may
+ * be used on different threads. An environment itself is used by one thread, unless it is {@link #share}d.
+ * <p>
+ * Taking a snapshot freezes the values its variables reach, see {@link Freezer}, which takes time in proportion to
+ * the values not frozen yet. Forking and {@link #restore} take constant time. The instances and closures of the
+ * snapshot stay the same objects in every fork, so comparing them gives the same result everywhere, but they are
+ * copied on write: the first field a fork sets on a frozen instance, or the first variable of a frozen closure it
+ * assigns, makes a copy that only this fork reads and writes from then on, see {@link #view} and {@link #own}. A
+ * fork never sees what another fork or the environment it was taken from did after the snapshot, to its variables
+ * or to the values they reach, and a restore drops the copies along with the variables.
+ */
 public class Environment {
     // not nullable
     private final Environment parent;
-    private final Map<String, Object> values = new HashMap<>();
-    // sentinel to store un-initialized variables
-    private static final Object UNINITIALIZED = new Object();
-
-    public static Environment DEFAULT = new Environment(new NoOp());
+    // variables defined or assigned since the environment was forked or snapshotted, they shadow the base
+    private Map<String, Object> values = new HashMap<>();
+    // copies of frozen values written since the environment was forked or snapshotted, keyed by the frozen value,
+    // none of which compare other than by identity
+    private Map<Object, Object> copies = new HashMap<>();
+    // snapshot the environment was forked from or last took, null if none
+    private Snapshot base = null;
+    // sentinel to store un-initialized variables, also used by Frame
+    static final Object UNINITIALIZED = new Object();
+    // returned by lookUp for variables which are not defined
+    static final Object UNDEFINED = new Object();
+    // stored for nil, a ConcurrentHashMap takes no null values
+    private static final Object NIL = new Object();
 
     // only for noop
     private Environment() {
@@ -23,19 +51,90 @@ public class Environment {
         this.parent = parent;
     }
 
+    // empty top level environment, the globals of a script
+    public static Environment createGlobal() {
+        return new Environment(new NoOp());
+    }
+
+    // top level environment starting with the variables of the snapshot
+    public static Environment fork(Snapshot snapshot) {
+        final Environment environment = createGlobal();
+        environment.base = snapshot;
+        return environment;
+    }
+
+    // freezes the variables of this environment alone, it keeps going on top of the snapshot
+    public Snapshot snapshot() {
+        if (!values.isEmpty() || !copies.isEmpty()) {
+            final List<Object> reached = new ArrayList<>(values.values());
+            reached.addAll(copies.values());
+            new Freezer().freeze(reached);
+            base = new Snapshot(values, copies, base);
+            values = new HashMap<>();
+            copies = new HashMap<>();
+        }
+        return base != null ? base : Snapshot.EMPTY;
+    }
+
+    // for the globals of a script running fibers, the environment may be used by several threads from now on
+    void share() {
+        if (!(values instanceof ConcurrentHashMap)) {
+            values = new ConcurrentHashMap<>(values);
+            copies = new ConcurrentHashMap<>(copies);
+        }
+    }
+
+    // drops every variable defined or assigned and every value copied since the snapshot
+    void restore(Snapshot snapshot) {
+        base = snapshot;
+        values = new HashMap<>();
+        copies = new HashMap<>();
+    }
+
+    // what this environment sees of a frozen value, the copy it or its snapshot made or else the value itself
+    @SuppressWarnings("unchecked")
+    <T> T view(T frozen) {
+        Object copy = copies.get(frozen);
+        if (copy == null && base != null) {
+            copy = base.copyOf(frozen);
+        }
+        return copy == null ? frozen : (T) copy;
+    }
+
+    // the copy of a frozen value this environment writes to, copied from what it sees on the first write
+    @SuppressWarnings("unchecked")
+    <T> T own(T frozen, UnaryOperator<T> copier) {
+        final Object copy = copies.get(frozen);
+        if (copy != null) return (T) copy;
+        final T made = copier.apply(view(frozen));
+        // fibers may race to make the copy, they all use the first one
+        final Object raced = copies.putIfAbsent(frozen, made);
+        return raced == null ? made : (T) raced;
+    }
+
+    // the value, UNINITIALIZED or UNDEFINED
+    Object lookUp(String name) {
+        final Object value = values.get(name);
+        if (value != null) return value == NIL ? null : value;
+        if (base != null) {
+            final Object shared = base.lookUp(name);
+            if (shared != UNDEFINED) return shared;
+        }
+        return parent.lookUp(name);
+    }
+
     boolean isDefined(String name) {
-        return values.containsKey(name) || parent.isDefined(name);
+        return lookUp(name) != UNDEFINED;
     }
 
     boolean isInitialized(String name) {
-        return values.get(name) != UNINITIALIZED || parent.isInitialized(name);
+        final Object value = lookUp(name);
+        return value != UNDEFINED && value != UNINITIALIZED;
     }
 
     Object get(String name) {
-        if (values.containsKey(name)) {
-            return values.get(name);
-        }
-        return parent.get(name);
+        final Object value = lookUp(name);
+        return value == UNDEFINED ? null : value;
     }
 
     void declare(String name) {
@@ -43,46 +142,86 @@ public class Environment {
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        values.put(name, value == null ? NIL : value);
     }
 
-    void assign(String name, Object value) {
-        if (values.containsKey(name)) {
-            values.put(name, value);
+    // false when the variable is not defined
+    boolean assign(String name, Object value) {
+        if (values.containsKey(name) || (base != null && base.lookUp(name) != UNDEFINED)) {
+            // variables of the snapshot get shadowed, it stays as it was
+            values.put(name, value == null ? NIL : value);
+            return true;
         }
-        parent.assign(name, value);
-    }
-
-    void assignAt(int distance, String name, Object value) {
-        ancestor(distance).values.put(name, value);
+        return parent.assign(name, value);
     }
 
-    Environment ancestor(int distance) {
-        Environment result = this;
-        for (int i = 0; i < distance; i++) {
-            result = result.parent;
+    /**
+     * Frozen variables of an {@link Environment}
+     * <p>
+     * Each snapshot holds the variables changed and the frozen values copied since the one before, a lookup goes
+     * through the chain until it finds the name or the value. Chains longer than {@link #MAX_DEPTH} are merged
+     * into a single snapshot.
+     */
+    public static final class Snapshot {
+        private static final int MAX_DEPTH = 8;
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), null);
+
+        private final Map<String, Object> values;
+        private final Map<Object, Object> copies;
+        // null for the first snapshot of a chain
+        private final Snapshot previous;
+        private final int depth;
+
+        private Snapshot(Map<String, Object> values, Map<Object, Object> copies, Snapshot previous) {
+            if (previous != null && previous.depth == MAX_DEPTH) {
+                final Map<String, Object> mergedValues = new HashMap<>();
+                final Map<Object, Object> mergedCopies = new HashMap<>();
+                previous.copyTo(mergedValues, mergedCopies);
+                mergedValues.putAll(values);
+                mergedCopies.putAll(copies);
+                values = mergedValues;
+                copies = mergedCopies;
+                previous = null;
+            }
+            this.values = values;
+            this.copies = copies;
+            this.previous = previous;
+            this.depth = previous == null ? 1 : previous.depth + 1;
         }
 
-        return result;
-    }
+        private Object lookUp(String name) {
+            for (Snapshot snapshot = this; snapshot != null; snapshot = snapshot.previous) {
+                final Object value = snapshot.values.get(name);
+                if (value != null) return value == NIL ? null : value;
+            }
+            return UNDEFINED;
+        }
 
-    private static class NoOp extends Environment {
-        public NoOp() {
+        // null when the value was not copied
+        private Object copyOf(Object frozen) {
+            for (Snapshot snapshot = this; snapshot != null; snapshot = snapshot.previous) {
+                final Object copy = snapshot.copies.get(frozen);
+                if (copy != null) return copy;
+            }
+            return null;
         }
 
-        @Override
-        boolean isDefined(String name) {
-            return false;
+        private void copyTo(Map<String, Object> values, Map<Object, Object> copies) {
+            if (previous != null) {
+                previous.copyTo(values, copies);
+            }
+            values.putAll(this.values);
+            copies.putAll(this.copies);
         }
+    }
 
-        @Override
-        boolean isInitialized(String name) {
-            return false;
+    private static class NoOp extends Environment {
+        public NoOp() {
         }
 
         @Override
-        Object get(String name) {
-            return null;
+        Object lookUp(String name) {
+            return UNDEFINED;
         }
 
         @Override
@@ -96,7 +235,8 @@ public class Environment {
         }
 
         @Override
-        void assign(String name, Object value) {
+        boolean assign(String name, Object value) {
+            return false;
         }
     }
 
@@ -30,6 +30,8 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        int local = -1;
+        int upvalue = -1;
     }
     static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
@@ -46,6 +48,7 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        BinaryNode node = BinaryNode.UNINITIALIZED;
     }
     static class Call extends Expr {
         Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -62,6 +65,7 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        boolean tail = false;
     }
     static class Get extends Expr {
         Get(Expr object, Token name) {
@@ -76,6 +80,7 @@ abstract class Expr {
 
         final Expr object;
         final Token name;
+        InlineCache cache = new InlineCache.Get();
     }
     static class Grouping extends Expr {
         Grouping(Expr expression) {
@@ -132,6 +137,7 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        InlineCache cache = new InlineCache.Set();
     }
     static class Super extends Expr {
         Super(Token keyword, Token method) {
@@ -146,6 +152,10 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+        int local = -1;
+        int upvalue = -1;
+        int thisLocal = -1;
+        int thisUpvalue = -1;
     }
     static class This extends Expr {
         This(Token keyword) {
@@ -158,6 +168,8 @@ abstract class Expr {
         }
 
         final Token keyword;
+        int local = -1;
+        int upvalue = -1;
     }
     static class Unary extends Expr {
         Unary(Token operator, Expr right) {
@@ -184,6 +196,8 @@ abstract class Expr {
         }
 
         final Token name;
+        int local = -1;
+        int upvalue = -1;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
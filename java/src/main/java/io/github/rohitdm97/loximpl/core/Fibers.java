@@ -0,0 +1,94 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fibers of one run, started by the spawn native and waited for with join
+ * <p>
+ * A fiber calls a function without parameters on a thread of its own, a virtual thread where the JVM has them and
+ * a daemon platform thread otherwise. It gets an {@link Interpreter} of its own sharing the globals of the one
+ * spawning it. The run ends only once every fiber it spawned has ended, errors of fibers nobody joined are
+ * reported then. Failures other than Lox errors, like a stack overflow, are thrown from the run like they would be
+ * on its own thread. Until the first spawn a run takes no locks at all, afterwards its Interpreters follow this memory
+ * model:
+ * <ul>
+ * <li>Everything a fiber did before spawning another is visible to the new one, everything a fiber did is visible
+ * to whoever joins it.</li>
+ * <li>Reading or setting a field of an instance is atomic. Field accesses take a lock striped over the instances,
+ * so a fiber never sees an instance in the middle of gaining a field and two fibers adding fields to the same
+ * instance do not lose either.</li>
+ * <li>Globals move to a concurrent map, defining, reading and assigning one is atomic.</li>
+ * <li>Local variables captured by closures of several fibers are not synchronized, a fiber may see an old value of
+ * such a variable until it joins the fiber writing it.</li>
+ * </ul>
+ * Fibers run on the tree-walker and the compiled code of the {@link Jit}. The bytecode VM does not have them, its
+ * spawn and join natives report just that.
+ */
+final class Fibers {
+    // a power of two
+    private static final int STRIPES = 64;
+    private static final ThreadFactory THREADS = threads();
+
+    private final Object[] locks = new Object[STRIPES];
+    // every fiber of the run, including the ones spawned by fibers
+    private final Queue<LoxFiber> started = new ConcurrentLinkedQueue<>();
+
+    Fibers() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    Object lock(LoxInstance instance) {
+        return locks[System.identityHashCode(instance) & (STRIPES - 1)];
+    }
+
+    LoxFiber spawn(Interpreter interpreter, LoxCallable function) {
+        final LoxFiber fiber = new LoxFiber(interpreter, function);
+        started.add(fiber);
+        THREADS.newThread(fiber::run).start();
+        return fiber;
+    }
+
+    // failures of the fibers nobody joined
+    List<Throwable> awaitAll() {
+        final List<Throwable> errors = new ArrayList<>();
+        boolean interrupted = false;
+        LoxFiber fiber;
+        while ((fiber = started.peek()) != null) {
+            try {
+                final Throwable error = fiber.await();
+                if (error != null) {
+                    errors.add(error);
+                }
+                started.poll();
+            } catch (InterruptedException e) {
+                // the fibers still use the globals, the run cannot end before them
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return errors;
+    }
+
+    // Thread.ofVirtual() came with Java 21, it is looked up so the interpreter still runs on 17
+    private static ThreadFactory threads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return runnable -> {
+                final Thread thread = new Thread(runnable, "lox-fiber");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Storage of local variables for a function call, variables are addressed by the slot assigned by the
+ * {@link Resolver}
+ * <p>
+ * Blocks get no frame of their own, their variables take further slots of the frame of the function, so the size
+ * of a frame covers every block inside it. Variables of enclosing functions are reached through the
+ * {@link Upvalue}s of the running closure and globals are kept in the {@link Environment}.
+ */
+class Frame {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object[] slots;
+    // captured variables of the closure running in this frame
+    final Upvalue[] upvalues;
+    // upvalues still pointing into slots, ordered from the highest slot
+    private Upvalue open = null;
+    // set while the Jit is counting loop iterations of the function, see Interpreter.visitWhileStmt
+    JitProfile profile = null;
+
+    Frame(int size, Upvalue[] upvalues) {
+        this.slots = size == 0 ? EMPTY : new Object[size];
+        this.upvalues = upvalues;
+    }
+
+    Object get(int slot) {
+        return slots[slot];
+    }
+
+    void set(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    // closures capturing the same slot share the upvalue
+    Upvalue capture(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = open;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+
+        final Upvalue created = new Upvalue(slots, slot, upvalue);
+        if (previous == null) {
+            open = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    // called when the variables from slot on go out of scope
+    void close(int slot) {
+        while (open != null && open.slot >= slot) {
+            open.close();
+            open = open.next;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Freezes every value the variables of an {@link Environment.Snapshot} reach, so the environments sharing them copy
+ * what they change instead
+ * <p>
+ * Instances and the variables closures captured are marked frozen, fields set on such an instance and assignments
+ * to such a variable go to a copy the environment of the running script keeps, see {@link Environment#own}. Classes
+ * and functions hold nothing else which changes, natives and fibers are left alone. Values a script makes from
+ * frozen ones, like instances of a frozen class, are not frozen until the next snapshot reaches them. What is frozen
+ * already is not walked again, it only reaches frozen values.
+ */
+final class Freezer {
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    // values not walked yet, a stack keeps long chains of instances from overflowing the JVM stack
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    void freeze(Iterable<Object> values) {
+        for (Object value : values) {
+            push(value);
+        }
+        while (!pending.isEmpty()) {
+            visit(pending.pop());
+        }
+    }
+
+    private void push(Object value) {
+        if (value != null && seen.add(value)) {
+            pending.push(value);
+        }
+    }
+
+    private void visit(Object value) {
+        if (value instanceof LoxInstance) {
+            final LoxInstance instance = (LoxInstance) value;
+            if (instance.isFrozen()) return;
+            instance.freeze();
+            push(instance.getKlass());
+            for (int slot = 0; slot < instance.getShape().size(); slot++) {
+                push(instance.getField(slot));
+            }
+        } else if (value instanceof LoxClass) {
+            final LoxClass klass = (LoxClass) value;
+            for (int slot = 0; slot < klass.getRootShape().methodCount(); slot++) {
+                push(klass.methodAt(slot));
+            }
+        } else if (value instanceof LoxFunction) {
+            final LoxFunction function = (LoxFunction) value;
+            for (Upvalue upvalue : function.upvalues()) {
+                push(upvalue);
+            }
+            push(function.receiver());
+        } else if (value instanceof Upvalue) {
+            // also the copies a snapshot takes along
+            final Upvalue upvalue = (Upvalue) value;
+            if (upvalue.isFrozen()) return;
+            upvalue.freeze();
+            push(upvalue.get());
+        } else if (value instanceof Obj) {
+            visit((Obj) value);
+        }
+    }
+
+    // values of the bytecode VM
+    private void visit(Obj value) {
+        if (value instanceof Obj.Instance) {
+            final Obj.Instance instance = (Obj.Instance) value;
+            if (instance.frozen) return;
+            instance.frozen = true;
+            push(instance.klass);
+            instance.fields.values().forEach(this::push);
+        } else if (value instanceof Obj.Class) {
+            ((Obj.Class) value).methods.values().forEach(this::push);
+        } else if (value instanceof Obj.Closure) {
+            for (Obj.Upvalue upvalue : ((Obj.Closure) value).upvalues) {
+                push(upvalue);
+            }
+        } else if (value instanceof Obj.Upvalue) {
+            final Obj.Upvalue upvalue = (Obj.Upvalue) value;
+            if (upvalue.frozen) return;
+            upvalue.frozen = true;
+            push(upvalue.closed);
+        } else if (value instanceof Obj.BoundMethod) {
+            push(((Obj.BoundMethod) value).receiver);
+            push(((Obj.BoundMethod) value).method);
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Remembers property lookups of one {@link Expr.Get} or {@link Expr.Set} site, keyed on the {@link Shape} of the
+ * receiver
+ * <p>
+ * A site seeing a single shape is monomorphic, it stays polymorphic up to {@link #MAX_ENTRIES} shapes and
+ * beyond that it is megamorphic and stops caching. Shapes never change once created, so entries are never
+ * invalidated. Entries hold shapes and slots only, the method is taken from the class of the receiver, so an
+ * entry stays valid for every class sharing the shape, including the ones later runs of a script declare.
+ * Entries are immutable and published by a single array store, so racing executions can at worst lose an entry.
+ */
+abstract class InlineCache {
+    private static final int MAX_ENTRIES = 4;
+
+    private final Entry[] entries = new Entry[MAX_ENTRIES];
+    private boolean megamorphic = false;
+
+    Entry lookup(LoxInstance instance, String name) {
+        final Shape shape = instance.getShape();
+        for (Entry entry : entries) {
+            if (entry == null) break;
+            if (entry.shape == shape) return entry;
+        }
+
+        final Entry entry = resolve(shape, name);
+        if (!megamorphic) {
+            remember(entry);
+        }
+        return entry;
+    }
+
+    abstract Entry resolve(Shape shape, String name);
+
+    // a single shape seen so far
+    boolean isMonomorphic() {
+        return entries[0] != null && entries[1] == null;
+    }
+
+    private void remember(Entry entry) {
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            if (entries[i] == null) {
+                entries[i] = entry;
+                return;
+            }
+        }
+        megamorphic = true;
+    }
+
+    static class Entry {
+        final Shape shape;
+        // slot of the field, -1 if the shape has no such field
+        final int slot;
+        // for reads of a missing field, the slot of the method in the class, -1 if it has no such method
+        final int method;
+        // for writes, the shape the instance has after the write
+        final Shape transition;
+
+        private Entry(Shape shape, int slot, int method, Shape transition) {
+            this.shape = shape;
+            this.slot = slot;
+            this.method = method;
+            this.transition = transition;
+        }
+    }
+
+    // field reads, falling back to methods of the class
+    static class Get extends InlineCache {
+        @Override
+        Entry resolve(Shape shape, String name) {
+            final int slot = shape.slotOf(name);
+            if (slot != -1) {
+                return new Entry(shape, slot, -1, shape);
+            }
+            return new Entry(shape, -1, shape.methodOf(name), shape);
+        }
+    }
+
+    // field writes, adding the field when the shape does not have it yet
+    static class Set extends InlineCache {
+        @Override
+        Entry resolve(Shape shape, String name) {
+            final int slot = shape.slotOf(name);
+            if (slot != -1) {
+                return new Entry(shape, slot, -1, shape);
+            }
+            final Shape next = shape.with(name);
+            return new Entry(shape, next.slotOf(name), -1, next);
+        }
+    }
+
+}
@@ -3,39 +3,60 @@ package io.github.rohitdm97.loximpl.core;
 import io.github.rohitdm97.loximpl.error.ErrorReport;
 import lombok.Getter;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
     @Getter
-    private final Environment globals = Environment.DEFAULT;
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private final Environment globals;
+    // frame of the running function, null while executing top level code
+    private Frame frame = null;
+    // value of the last return statement, read once its Completion.RETURN reaches the function
+    private Object returnValue = null;
+    // filled by calls in tail position, read once its Completion.TAIL_CALL reaches the function
+    final TailCall tailCall = new TailCall();
+    // null unless hot functions get compiled
+    final Jit jit;
+    // null unless -Dlox.stats=true, read behind Stats.ENABLED only
+    final Stats stats;
+    // null until the running script spawns a fiber, fields are accessed under its locks from then on
+    private Fibers fibers = null;
+    // where print writes, System.out when null
+    PrintStream out = null;
 
     private final ErrorReport report;
 
     public Interpreter(ErrorReport report) {
-        this.report = report;
+        this(report, null);
+    }
 
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+    Interpreter(ErrorReport report, Jit jit) {
+        this(report, jit, Stats.ENABLED ? new Stats(true) : null, Environment.createGlobal());
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000d;
-            }
+    Interpreter(ErrorReport report, Jit jit, Stats stats, Environment globals) {
+        this.report = report;
+        this.jit = jit;
+        this.stats = stats;
+        this.globals = globals;
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+        globals.define("clock", new NativeFunction(0, (interpreter, arguments) -> (double) System.currentTimeMillis() / 1000d));
+        globals.define("spawn", new NativeFunction(1, (interpreter, arguments) -> interpreter.spawn(arguments.get(0))));
+        globals.define("join", new NativeFunction(1, (interpreter, arguments) -> interpreter.join(arguments.get(0))));
+    }
+
+    // interpreter of a fiber, its globals are already set up
+    private Interpreter(Interpreter spawner) {
+        this.report = spawner.report;
+        this.jit = spawner.jit;
+        this.stats = spawner.stats;
+        this.globals = spawner.globals;
+        this.fibers = spawner.fibers;
+        this.out = spawner.out;
     }
 
     void interpret(List<Stmt> statements) {
@@ -46,112 +67,198 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         } catch (RuntimeError error) {
             report.error(error.getMessage(), error.token.line, "");
         }
+        awaitFibers();
+    }
+
+    // the run ends with the last of its fibers
+    private void awaitFibers() {
+        if (fibers == null) return;
+        Throwable failure = null;
+        for (Throwable error : fibers.awaitAll()) {
+            if (error instanceof RuntimeError) {
+                report.error(error.getMessage(), ((RuntimeError) error).token.line, "");
+            } else if (failure == null) {
+                failure = error;
+            } else {
+                failure.addSuppressed(error);
+            }
+        }
+        fibers = null;
+        if (failure != null) throw LoxFiber.unchecked(failure);
+    }
+
+    LoxFiber spawn(Object function) {
+        if (!(function instanceof LoxCallable) || ((LoxCallable) function).arity() != 0) {
+            throw new NativeFunction.Failure("Can only spawn functions without parameters.");
+        }
+        if (fibers == null) {
+            fibers = new Fibers();
+            globals.share();
+        }
+        return fibers.spawn(new Interpreter(this), (LoxCallable) function);
+    }
+
+    Object join(Object fiber) {
+        if (!(fiber instanceof LoxFiber)) {
+            throw new NativeFunction.Failure("Can only join fibers.");
+        }
+        try {
+            return ((LoxFiber) fiber).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeFunction.Failure("Interrupted while joining a fiber.");
+        }
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
-        Object superClass = null;
+    public Completion visitClassStmt(Stmt.Class stmt) {
+        LoxClass superClass = null;
         if (stmt.superclass != null) {
-            superClass = evaluate(stmt.superclass);
-            if (!(superClass instanceof LoxClass)) {
-                throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
-            }
+            superClass = superclass(stmt, evaluate(stmt.superclass));
         }
 
-        environment.define(stmt.name.lexeme, null);
+        define(stmt.name, stmt.slot, null);
+        LoxClass klass = klass(frame, stmt, superClass);
+        if (frame == null) {
+            globals.assign(stmt.name.lexeme, klass);
+        } else {
+            frame.set(stmt.slot, klass);
+        }
+        return Completion.NORMAL;
+    }
 
-        if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superClass);
+    static LoxClass superclass(Stmt.Class stmt, Object value) {
+        if (!(value instanceof LoxClass)) {
+            throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+        }
+        return (LoxClass) value;
+    }
+
+    // methods capture their variables from the given frame
+    LoxClass klass(Frame frame, Stmt.Class stmt, LoxClass superClass) {
+        Frame enclosing = frame;
+        if (superClass != null) {
+            // methods capture 'super' from a frame of its own
+            enclosing = new Frame(1, capture(frame, stmt.captures));
+            if (Stats.ENABLED) stats.environments.increment();
+            enclosing.set(0, superClass);
         }
 
         final Map<String, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
             final boolean isInitializer = method.name.lexeme.equals("init");
-            LoxFunction function = new LoxFunction(method, environment, isInitializer);
+            LoxFunction function = new LoxFunction(method, capture(enclosing, method.captures), isInitializer);
             methods.put(method.name.lexeme, function);
         }
 
-        LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superClass, methods);
         if (superClass != null) {
-            environment = environment.ancestor(1);
+            enclosing.close(0);
         }
-        environment.assign(stmt.name.lexeme, klass);
-        return null;
+        return new LoxClass(stmt, superClass, methods);
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
-            stmt.thenBranch.accept(this);
+            return stmt.thenBranch.accept(this);
         } else if (stmt.elseBranch != null) {
-            stmt.elseBranch.accept(this);
+            return stmt.elseBranch.accept(this);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlockUsingEnvironment(stmt.statements, new Environment(this.environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.inlined) {
+            // the variables of the block live in the frame of the function
+            final Completion completion = execute(stmt.statements);
+            if (stmt.closesUpvalues) {
+                frame.close(stmt.firstSlot);
+            }
+            return completion;
+        }
+
+        // blocks at top level have no function to share a frame with
+        final Frame created = new Frame(stmt.frameSize, Upvalue.NONE);
+        if (Stats.ENABLED) stats.environments.increment();
+        final Completion completion = executeBlock(stmt.statements, created);
+        created.close(0);
+        return completion;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            stmt.body.accept(this);
+            if (frame != null && frame.profile != null) {
+                // back edges count towards compiling the function, the running call stays in the Interpreter
+                frame.profile.counter++;
+            }
+            final Completion completion = stmt.body.accept(this);
+            if (completion != Completion.NORMAL) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
-        Object value = evaluate(stmt.expression);
-        String str = value == null ? "nil" : String.valueOf(value);
-        if (value instanceof Double && str.endsWith(".0")) {
-            str = str.substring(0, str.length() - ".0".length());
-        }
-        System.out.println(str);
-        return null;
+    public Completion visitPrintStmt(Stmt.Print stmt) {
+        print(evaluate(stmt.expression));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         if (stmt.initializer == null) {
-            environment.declare(stmt.name.lexeme);
+            if (frame == null) {
+                globals.declare(stmt.name.lexeme);
+            } else {
+                // loops run the same declaration again on the same slot
+                frame.set(stmt.slot, Environment.UNINITIALIZED);
+            }
         } else {
             Object value = evaluate(stmt.initializer);
-            environment.define(stmt.name.lexeme, value);
+            define(stmt.name, stmt.slot, value);
         }
 
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, this.environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        define(stmt.name, stmt.slot, closure(frame, stmt));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
+        if (value == TailCall.PENDING) {
+            return Completion.TAIL_CALL;
+        }
+
+        returnValue = value;
+        return Completion.RETURN;
+    }
 
-        throw new Return(value);
+    void interpret(CompiledFunction script) {
+        try {
+            script.invoke(this, null);
+        } catch (RuntimeError error) {
+            report.error(error.getMessage(), error.token.line, "");
+        }
+        awaitFibers();
     }
 
     void interpret(Expr expression) {
         try {
             Object value = evaluate(expression);
-            System.out.println(String.valueOf(value));
+            (out != null ? out : System.out).println(String.valueOf(value));
         } catch (RuntimeError error) {
             report.error(error.getMessage(), error.token.line, "");
         }
@@ -159,50 +266,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
-
-            case BANG_EQUAL:
-                return !isEqual(left, right);
-            case EQUAL_EQUAL:
-                return isEqual(left, right);
-        }
-
-        // Unreachable.
-        return null;
+        return expr.node.execute(this, expr);
     }
 
     @Override
@@ -220,24 +284,98 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            return invoke(expr, (Expr.Get) expr.callee);
+        }
+        if (expr.callee instanceof Expr.Super) {
+            return invokeSuper(expr, (Expr.Super) expr.callee);
+        }
+
         Object callee = evaluate(expr.callee);
+        List<Object> arguments = evaluateArguments(expr);
+        return call(expr, callee, arguments);
+    }
+
+    // obj.method() runs the method with obj as receiver, no bound method is made for it
+    private Object invoke(Expr.Call expr, Expr.Get get) {
+        final Object object = evaluate(get.object);
+        final InlineCache.Entry entry = lookUpInvoke(get, object);
+        return invoke(expr, (LoxInstance) object, entry, evaluateArguments(expr));
+    }
+
+    // the property is looked up before the arguments are evaluated
+    InlineCache.Entry lookUpInvoke(Expr.Get get, Object object) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(get.name, "Only instances have properties.");
+        }
 
-        List<Object> arguments = new ArrayList<>();
+        final InlineCache.Entry entry = lookUp(get.cache, (LoxInstance) object, get.name.lexeme);
+        if (entry.slot == -1 && entry.method == -1) {
+            throw new RuntimeError(get.name, String.format("Undefined property '%s'.", get.name.lexeme));
+        }
+        return entry;
+    }
+
+    Object invoke(Expr.Call expr, LoxInstance instance, InlineCache.Entry entry, List<Object> arguments) {
+        if (entry.slot != -1) {
+            // a field holding something callable
+            return call(expr, getField(instance, entry.slot), arguments);
+        }
+        return dispatch(expr, instance.getKlass().methodAt(entry.method), instance, arguments);
+    }
+
+    private Object invokeSuper(Expr.Call expr, Expr.Super callee) {
+        final LoxFunction method = findSuperMethod(callee);
+        final List<Object> arguments = evaluateArguments(expr);
+        return invokeSuper(expr, method, thisOf(callee), arguments);
+    }
+
+    Object invokeSuper(Expr.Call expr, LoxFunction method, Object receiver, List<Object> arguments) {
+        return dispatch(expr, method, (LoxInstance) receiver, arguments);
+    }
+
+    private List<Object> evaluateArguments(Expr.Call expr) {
+        List<Object> arguments = new ArrayList<>(expr.arguments.size());
         for (Expr argument : expr.arguments) {
             arguments.add(evaluate(argument));
         }
+        return arguments;
+    }
 
+    Object call(Expr.Call expr, Object callee, List<Object> arguments) {
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
-        LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, String.format("Expected %d arguments but got %d.", function.arity(), arguments.size()));
+        return dispatch(expr, (LoxCallable) callee, null, arguments);
+    }
+
+    // receiver is null unless a method is invoked without binding it
+    private Object dispatch(Expr.Call expr, LoxCallable function, LoxInstance receiver, List<Object> arguments) {
+        checkArity(expr, function, arguments);
+        if (expr.tail && function instanceof LoxFunction) {
+            tailCall.set((LoxFunction) function, receiver, arguments);
+            return TailCall.PENDING;
         }
 
+        if (receiver != null) {
+            return ((LoxFunction) function).call(this, receiver, arguments);
+        }
+        if (function instanceof NativeFunction) {
+            try {
+                return function.call(this, arguments);
+            } catch (NativeFunction.Failure failure) {
+                throw new RuntimeError(expr.paren, failure.getMessage());
+            }
+        }
         return function.call(this, arguments);
     }
 
+    private void checkArity(Expr.Call expr, LoxCallable function, List<Object> arguments) {
+        if (arguments.size() != function.arity()) {
+            throw new RuntimeError(expr.paren, String.format("Expected %d arguments but got %d.", function.arity(), arguments.size()));
+        }
+    }
+
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
@@ -250,16 +388,63 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSetExpr(Expr.Set expr) {
-        final Object object = evaluate(expr.object);
+        final LoxInstance instance = fieldTarget(expr, evaluate(expr.object));
+        return setProperty(expr, instance, evaluate(expr.value));
+    }
+
+    // checked before the value is evaluated
+    LoxInstance fieldTarget(Expr.Set expr, Object object) {
         if (!(object instanceof LoxInstance)) {
             throw new RuntimeError(expr.name, "Only instances have fields.");
         }
+        return (LoxInstance) object;
+    }
+
+    Object setProperty(Expr.Set expr, LoxInstance instance, Object value) {
+        if (instance.isFrozen()) {
+            // the globals keep a copy to write to, the instance itself is shared with other environments
+            instance = globals.own(instance, LoxInstance::copy);
+        }
+        if (fibers != null) {
+            synchronized (fibers.lock(instance)) {
+                return storeField(expr, instance, value);
+            }
+        }
+        return storeField(expr, instance, value);
+    }
 
-        final Object value = evaluate(expr.value);
-        ((LoxInstance) object).setField(expr.name.lexeme, value);
+    private static Object storeField(Expr.Set expr, LoxInstance instance, Object value) {
+        // looked up after evaluating the value, which may add fields to the same instance
+        final InlineCache.Entry entry = expr.cache.lookup(instance, expr.name.lexeme);
+        instance.setField(entry.transition, entry.slot, value);
         return value;
     }
 
+    // what the globals see of a frozen instance, it stays the receiver of its methods
+    private LoxInstance view(LoxInstance instance) {
+        return instance.isFrozen() ? globals.view(instance) : instance;
+    }
+
+    private InlineCache.Entry lookUp(InlineCache cache, LoxInstance object, String name) {
+        final LoxInstance instance = view(object);
+        if (fibers != null) {
+            synchronized (fibers.lock(instance)) {
+                return cache.lookup(instance, name);
+            }
+        }
+        return cache.lookup(instance, name);
+    }
+
+    private Object getField(LoxInstance object, int slot) {
+        final LoxInstance instance = view(object);
+        if (fibers != null) {
+            synchronized (fibers.lock(instance)) {
+                return instance.getField(slot);
+            }
+        }
+        return instance.getField(slot);
+    }
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
@@ -268,138 +453,253 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
+                return negate(expr.operator, right);
         }
 
         return null;
     }
 
+    static Object negate(Token operator, Object operand) {
+        if (operand instanceof Double) return -(double) operand;
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = evaluate(expr.object);
-        if (object instanceof LoxInstance) {
-            final LoxInstance instance = (LoxInstance) object;
-            final LoxInstance.Value result = instance.get(expr.name.lexeme);
-            if (result == null) {
-                throw new RuntimeError(expr.name, String.format("Undefined property '%s'.", expr.name.lexeme));
+        return getProperty(expr, evaluate(expr.object));
+    }
+
+    Object getProperty(Expr.Get expr, Object object) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(expr.name, "Only instances have properties.");
+        }
+        final LoxInstance receiver = (LoxInstance) object;
+        final LoxInstance instance = view(receiver);
+        if (fibers != null) {
+            synchronized (fibers.lock(instance)) {
+                return loadProperty(expr, receiver, instance);
             }
-            return result.unwrap();
+        }
+        return loadProperty(expr, receiver, instance);
+    }
+
+    // instance is what the globals see of the receiver
+    private static Object loadProperty(Expr.Get expr, LoxInstance receiver, LoxInstance instance) {
+        final InlineCache.Entry entry = expr.cache.lookup(instance, expr.name.lexeme);
+        if (entry.slot != -1) {
+            return instance.getField(entry.slot);
         }
 
-        throw new RuntimeError(expr.name, "Only instances have properties.");
+        if (entry.method == -1) {
+            throw new RuntimeError(expr.name, String.format("Undefined property '%s'.", expr.name.lexeme));
+        }
+        return receiver.getKlass().methodAt(entry.method).bind(receiver);
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.local, expr.upvalue);
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superClass = (LoxClass) environment.ancestor(distance).get("super");
-        LoxInstance object = (LoxInstance) environment.ancestor(distance - 1).get("this");
-        LoxFunction method = superClass.findMethod(expr.method.lexeme);
+        return findSuperMethod(expr).bind(thisOf(expr));
+    }
+
+    private LoxFunction findSuperMethod(Expr.Super expr) {
+        return superMethod(expr, lookUpVariable(expr.keyword, expr.local, expr.upvalue));
+    }
+
+    LoxFunction superMethod(Expr.Super expr, Object superClass) {
+        LoxFunction method = ((LoxClass) superClass).findMethod(expr.method.lexeme);
 
         if (method == null) {
             throw new RuntimeError(expr.method, String.format("Undefined property '%s'.", expr.method.lexeme));
         }
+        return method;
+    }
 
-        return method.bind(object);
+    private LoxInstance thisOf(Expr.Super expr) {
+        return (LoxInstance) lookUpVariable(expr.keyword, expr.thisLocal, expr.thisUpvalue);
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.local, expr.upvalue);
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        final Token token = expr.name;
-        final String name = token.lexeme;
         Object value = evaluate(expr.value);
 
-        if (!locals.containsKey(expr)) {
-            globals.assign(expr.name.lexeme, value);
+        if (expr.local != -1) {
+            frame.set(expr.local, value);
+        } else if (expr.upvalue != -1) {
+            setUpvalue(frame.upvalues[expr.upvalue], value);
+        } else {
+            assignGlobal(expr.name, value);
         }
-        int distance = locals.get(expr);
-        environment.assignAt(distance, expr.name.lexeme, value);
+        return value;
+    }
+
+    Object getUpvalue(Upvalue upvalue) {
+        return upvalue.isFrozen() ? globals.view(upvalue).get() : upvalue.get();
+    }
+
+    void setUpvalue(Upvalue upvalue, Object value) {
+        if (upvalue.isFrozen()) {
+            // the globals keep a copy to write to, the variable itself is shared with other environments
+            upvalue = globals.own(upvalue, Upvalue::copy);
+        }
+        upvalue.set(value);
+    }
+
+    // declarations of top level code run by compiled scripts, see AotCompiler
+    void defineGlobal(Token token, Object value) {
+        globals.define(token.lexeme, value);
+    }
 
+    void declareGlobal(Token token) {
+        globals.declare(token.lexeme);
+    }
+
+    Object assignGlobal(Token token, Object value) {
+        if (!globals.assign(token.lexeme, value)) {
+            throw new RuntimeError(token, String.format("Undefined variable '%s'", token.lexeme));
+        }
         return value;
     }
 
-    void executeBlockUsingEnvironment(List<Stmt> statements, Environment created) {
-        final Environment previous = this.environment;
+    Completion executeBlock(List<Stmt> statements, Frame created) {
+        final Frame previous = this.frame;
         try {
-            this.environment = created;
-
-            for (Stmt statement : statements) {
-                statement.accept(this);
-            }
+            this.frame = created;
+            return execute(statements);
         } finally {
-            this.environment = previous;
+            this.frame = previous;
+        }
+    }
+
+    private Completion execute(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            final Completion completion = statement.accept(this);
+            if (completion != Completion.NORMAL) return completion;
         }
+        return Completion.NORMAL;
+    }
+
+    // result of a function run by compiled code
+    void returnValue(Object value) {
+        returnValue = value;
     }
 
-    private Object evaluate(Expr expr) {
+    Object takeReturnValue() {
+        final Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    // slot comes from the Resolver, at top level declarations go to the globals instead
+    private void define(Token name, int slot, Object value) {
+        if (frame == null) {
+            globals.define(name.lexeme, value);
+        } else {
+            frame.set(slot, value);
+        }
+    }
+
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private boolean isTruthy(Object obj) {
+    // for operands of number specializations, only results of nested arithmetic skip boxing
+    double evaluateDouble(Expr expr) throws UnexpectedResult {
+        if (expr instanceof Expr.Binary) {
+            final Expr.Binary binary = (Expr.Binary) expr;
+            return binary.node.executeDouble(this, binary);
+        }
+        if (expr instanceof Expr.Grouping) {
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        }
+
+        final Object value = evaluate(expr);
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    static boolean isTruthy(Object obj) {
         if (obj == null) return false;
         if (obj instanceof Boolean) return (boolean) obj;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
         return a.equals(b);
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
-        throw new RuntimeError(operator, "Operand must be a number.");
+    static String stringify(Object value) {
+        String str = value == null ? "nil" : String.valueOf(value);
+        if (value instanceof Double && str.endsWith(".0")) {
+            str = str.substring(0, str.length() - ".0".length());
+        }
+        return str;
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
-
-        throw new RuntimeError(operator, "Operands must be numbers.");
+    // local and upvalue come from the Resolver, both are -1 for globals
+    private Object lookUpVariable(Token token, int local, int upvalue) {
+        final Object value;
+        if (local != -1) {
+            value = frame.get(local);
+        } else if (upvalue != -1) {
+            value = getUpvalue(frame.upvalues[upvalue]);
+        } else {
+            return lookUpGlobal(token);
+        }
+        // we know it is defined
+        if (value == Environment.UNINITIALIZED) {
+            throw uninitialized(token);
+        }
+        return value;
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    Object lookUpGlobal(Token token) {
+        final Object value = globals.lookUp(token.lexeme);
+        if (value == Environment.UNDEFINED) {
+            throw new RuntimeError(token, String.format("Undefined variable '%s'", token.lexeme));
+        }
+        if (value == Environment.UNINITIALIZED) {
+            throw uninitialized(token);
+        }
+        return value;
     }
 
-    private Object lookUpVariable(Token token, Expr expr) {
-        if (!locals.containsKey(expr)) {
-            if (!globals.isDefined(token.lexeme)) {
-                throw new RuntimeError(token, String.format("Undefined variable '%s'", token.lexeme));
-            }
-            return lookUpInitialized(globals, token);
-        }
-        int distance = locals.get(expr);
-        // we know it is defined
-        return lookUpInitialized(environment.ancestor(distance), token);
+    void print(Object value) {
+        (out != null ? out : System.out).println(stringify(value));
     }
 
-    private Object lookUpInitialized(Environment env, Token token) {
-        if (!env.isInitialized(token.lexeme)) {
-            throw new RuntimeError(token, String.format("Uninitialized variable '%s'", token.lexeme));
-        }
-        return env.get(token.lexeme);
+    LoxFunction closure(Frame frame, Stmt.Function stmt) {
+        return new LoxFunction(stmt, capture(frame, stmt.captures));
     }
 
-    private static class RuntimeError extends RuntimeException {
-        final Token token;
+    // upvalues of a closure created in the given frame
+    private static Upvalue[] capture(Frame frame, Capture[] captures) {
+        if (captures.length == 0) return Upvalue.NONE;
 
-        RuntimeError(Token token, String message) {
-            super(message);
-            this.token = token;
+        final Upvalue[] upvalues = new Upvalue[captures.length];
+        for (int i = 0; i < captures.length; i++) {
+            final Capture capture = captures[i];
+            upvalues[i] = capture.local ? frame.capture(capture.index) : frame.upvalues[capture.index];
         }
+        return upvalues;
+    }
+
+    static RuntimeError uninitialized(Token token) {
+        return new RuntimeError(token, String.format("Uninitialized variable '%s'", token.lexeme));
     }
 
 }
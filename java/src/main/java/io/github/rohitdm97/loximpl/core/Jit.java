@@ -0,0 +1,69 @@
+package io.github.rohitdm97.loximpl.core;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Second tier of the tree-walker, compiles hot functions to JVM classes which HotSpot then optimizes further
+ * <p>
+ * The {@link Interpreter} counts calls and loop iterations of every function declaration. Once the count reaches
+ * {@link #threshold} the body goes through the {@link JitCompiler} and is loaded as a hidden class, later calls
+ * run the compiled code. A function already running keeps running in the Interpreter, there is no on-stack
+ * replacement. Compiled code calls back into the Interpreter for calls, properties and globals, so both tiers mix
+ * freely. Bodies the JitCompiler does not handle stay with the Interpreter.
+ */
+@Log4j2
+class Jit {
+    private static final int DEFAULT_THRESHOLD = 1000;
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final int threshold;
+
+    Jit() {
+        this(Integer.getInteger("lox.jit.threshold", DEFAULT_THRESHOLD));
+    }
+
+    Jit(int threshold) {
+        this.threshold = threshold;
+    }
+
+    // null while the function should keep running in the Interpreter
+    CompiledFunction compiled(Stmt.Function declaration, boolean isMethod) {
+        final JitProfile profile = declaration.profile;
+        final CompiledFunction code = profile.code;
+        if (code != null) return code;
+        if (profile.rejected || ++profile.counter < threshold) return null;
+
+        try {
+            final CompiledFunction compiled = compile(declaration, isMethod);
+            profile.code = compiled;
+            log.debug("Compiled <fn {}>", declaration.name.lexeme);
+            return compiled;
+        } catch (JitCompiler.Unsupported e) {
+            log.debug("Not compiling <fn {}>: {}", declaration.name.lexeme, e.getMessage());
+            profile.rejected = true;
+        } catch (ReflectiveOperationException | IllegalStateException | LinkageError e) {
+            log.warn("Failed to compile <fn {}>", declaration.name.lexeme, e);
+            profile.rejected = true;
+        }
+        return null;
+    }
+
+    private CompiledFunction compile(Stmt.Function declaration, boolean isMethod) throws ReflectiveOperationException {
+        final JitCompiler compiler = new JitCompiler(declaration, isMethod);
+        final byte[] bytes = compiler.compile();
+
+        final MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+        final MethodType constructor = MethodType.methodType(void.class, Object[].class);
+        final MethodHandle handle = hidden.findConstructor(hidden.lookupClass(), constructor);
+        try {
+            return (CompiledFunction) handle.invoke(compiler.constants());
+        } catch (Throwable e) {
+            throw new IllegalStateException("Compiled class of <fn " + declaration.name.lexeme + "> failed to load", e);
+        }
+    }
+
+}
@@ -0,0 +1,953 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the body of one function into a class implementing {@link CompiledFunction}, see {@link Jit}, or the top
+ * level code of a whole script, see {@link AotCompiler}
+ * <p>
+ * Variables the closures of the function capture stay in the {@link Frame}, every other slot becomes a JVM local.
+ * Arithmetic and comparisons the Interpreter has only seen on numbers are compiled to primitive double
+ * operations behind a type check, nested arithmetic keeps its intermediate results unboxed and only the value of
+ * the outermost operation becomes a Double. Anything else calls the same helpers of the Interpreter the
+ * tree-walker uses, so runtime errors are the same in both tiers. AST nodes and tokens those helpers need are
+ * handed to the class as constants.
+ */
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String PACKAGE = Type.getInternalName(JitCompiler.class).replace("JitCompiler", "");
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+    private static final String DOUBLE = Type.getInternalName(Double.class);
+    private static final String BOOLEAN = Type.getInternalName(Boolean.class);
+    private static final String ARRAY_LIST = Type.getInternalName(ArrayList.class);
+    private static final String INTERPRETER = Type.getInternalName(Interpreter.class);
+    private static final String FRAME = Type.getInternalName(Frame.class);
+    private static final String UPVALUE = Type.getInternalName(Upvalue.class);
+    private static final Handle CALL_SITE = new Handle(Opcodes.H_INVOKESTATIC, Type.getInternalName(LoxCallSite.class),
+            "bootstrap", Type.getMethodDescriptor(Type.getType(CallSite.class), Type.getType(MethodHandles.Lookup.class),
+            Type.getType(String.class), Type.getType(MethodType.class)), false);
+
+    // locals of the generated method
+    private static final int THIS = 0;
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int FRAME_LOCAL = 2;
+    private static final int FIRST_SLOT = 3;
+
+    private final String className;
+    private final List<Stmt> body;
+    // receiver and arguments, which come in the frame
+    private final int parameters;
+    // top level code of a script rather than a function, see AotCompiler
+    private final boolean script;
+    // the Interpreter ran the code before, its BinaryNodes tell which operands were numbers
+    private final boolean profiled;
+    // slots captured by closures, they live in the frame
+    private final boolean[] captured;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+    private MethodVisitor mv;
+    private int nextTemp;
+    // blocks entered by a script, declarations outside of them are globals
+    private int depth = 0;
+
+    JitCompiler(Stmt.Function function, boolean isMethod) {
+        this("Compiled", function.body, function.params.size() + (isMethod ? 1 : 0), function.frameSize, false, true);
+    }
+
+    // compiled ahead of time, every arithmetic operation is guessed to be on numbers
+    JitCompiler(Stmt.Function function, boolean isMethod, String simpleName) {
+        this(simpleName, function.body, function.params.size() + (isMethod ? 1 : 0), function.frameSize, false, false);
+    }
+
+    // top level blocks of the script each get a frame, their slots share the JVM locals
+    JitCompiler(List<Stmt> statements, String simpleName) {
+        this(simpleName, statements, 0, frameSize(statements), true, false);
+    }
+
+    // largest frame of a top level block, also those below an if or a while
+    private static int frameSize(List<Stmt> statements) {
+        int size = 0;
+        for (Stmt stmt : statements) {
+            size = Math.max(size, frameSize(stmt));
+        }
+        return size;
+    }
+
+    private static int frameSize(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) return ((Stmt.Block) stmt).frameSize;
+        if (stmt instanceof Stmt.If) {
+            final Stmt.If branch = (Stmt.If) stmt;
+            return Math.max(frameSize(branch.thenBranch), branch.elseBranch == null ? 0 : frameSize(branch.elseBranch));
+        }
+        if (stmt instanceof Stmt.While) return frameSize(((Stmt.While) stmt).body);
+        return 0;
+    }
+
+    private JitCompiler(String simpleName, List<Stmt> body, int parameters, int frameSize, boolean script, boolean profiled) {
+        this.className = PACKAGE + simpleName;
+        this.body = body;
+        this.parameters = parameters;
+        this.script = script;
+        this.profiled = profiled;
+        this.captured = new boolean[frameSize];
+        this.nextTemp = FIRST_SLOT + frameSize;
+        findCaptured(body);
+    }
+
+    String className() {
+        return className;
+    }
+
+    Object[] constants() {
+        return constants.toArray();
+    }
+
+    byte[] compile() {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, OBJECT,
+                new String[]{Type.getInternalName(CompiledFunction.class)});
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "constants", "[" + OBJECT_DESC, null, null).visitEnd();
+
+        final MethodVisitor init = writer.visitMethod(0, "<init>", "([" + OBJECT_DESC + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, THIS);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, THIS);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, className, "constants", "[" + OBJECT_DESC);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "invoke",
+                Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(Interpreter.class), Type.getType(Frame.class)),
+                null, null);
+        mv.visitCode();
+        prologue();
+        for (Stmt stmt : body) {
+            stmt.accept(this);
+        }
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        writer.visitEnd();
+        try {
+            return writer.toByteArray();
+        } catch (MethodTooLargeException | ClassTooLargeException e) {
+            // a JVM method holds at most 64KB of bytecode, a body that large keeps running in the Interpreter
+            throw new Unsupported("code too large, a JVM method holds at most 64KB of bytecode");
+        }
+    }
+
+    // receiver and arguments come in the frame, the slots held in JVM locals are copied out of it
+    private void prologue() {
+        for (int slot = 0; slot < captured.length; slot++) {
+            if (captured[slot]) continue;
+            if (slot < parameters) {
+                mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+                pushInt(slot);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, FRAME, "get", "(I)" + OBJECT_DESC, false);
+            } else {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+            }
+            mv.visitVarInsn(Opcodes.ASTORE, FIRST_SLOT + slot);
+        }
+    }
+
+    // closures are only declared by statements, their local captures point into this frame
+    // a class with a superclass captures for its methods, see Interpreter.klass
+    private void findCaptured(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            findCaptured(stmt);
+        }
+    }
+
+    private void findCaptured(Stmt stmt) {
+        if (stmt instanceof Stmt.Function) {
+            markCaptured(((Stmt.Function) stmt).captures);
+        } else if (stmt instanceof Stmt.Class) {
+            final Stmt.Class klass = (Stmt.Class) stmt;
+            if (klass.superclass != null) {
+                markCaptured(klass.captures);
+            } else {
+                for (Stmt.Function method : klass.methods) {
+                    markCaptured(method.captures);
+                }
+            }
+        } else if (stmt instanceof Stmt.Block) {
+            findCaptured(((Stmt.Block) stmt).statements);
+        } else if (stmt instanceof Stmt.If) {
+            findCaptured(((Stmt.If) stmt).thenBranch);
+            if (((Stmt.If) stmt).elseBranch != null) findCaptured(((Stmt.If) stmt).elseBranch);
+        } else if (stmt instanceof Stmt.While) {
+            findCaptured(((Stmt.While) stmt).body);
+        }
+    }
+
+    private void markCaptured(Capture[] captures) {
+        for (Capture capture : captures) {
+            if (capture.local) captured[capture.index] = true;
+        }
+    }
+
+    private boolean isGlobal() {
+        return script && depth == 0;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        final boolean framed = isGlobal();
+        if (framed) {
+            mv.visitTypeInsn(Opcodes.NEW, FRAME);
+            mv.visitInsn(Opcodes.DUP);
+            pushInt(stmt.frameSize);
+            mv.visitFieldInsn(Opcodes.GETSTATIC, UPVALUE, "NONE", "[L" + UPVALUE + ";");
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, FRAME, "<init>", "(I[L" + UPVALUE + ";)V", false);
+            mv.visitVarInsn(Opcodes.ASTORE, FRAME_LOCAL);
+        }
+        depth++;
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        depth--;
+        if (stmt.closesUpvalues || framed) {
+            mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+            pushInt(framed ? 0 : stmt.firstSlot);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, FRAME, "close", "(I)V", false);
+        }
+        if (framed) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+            mv.visitVarInsn(Opcodes.ASTORE, FRAME_LOCAL);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        final int superClass = allocateTemp();
+        if (stmt.superclass == null) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            pushConstant(stmt, Stmt.Class.class);
+            stmt.superclass.accept(this);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "superclass",
+                    Type.getMethodDescriptor(Type.getType(LoxClass.class), Type.getType(Stmt.Class.class), Type.getType(Object.class)),
+                    false);
+        }
+        mv.visitVarInsn(Opcodes.ASTORE, superClass);
+
+        // the name is defined before the methods are created, like in the Interpreter
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        declare(stmt.name, stmt.slot);
+
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+        pushConstant(stmt, Stmt.Class.class);
+        mv.visitVarInsn(Opcodes.ALOAD, superClass);
+        invokeInterpreter("klass", LoxClass.class, Frame.class, Stmt.Class.class, LoxClass.class);
+        if (isGlobal()) {
+            final int klass = allocateTemp();
+            mv.visitVarInsn(Opcodes.ASTORE, klass);
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(stmt.name, Token.class);
+            mv.visitVarInsn(Opcodes.ALOAD, klass);
+            invokeInterpreter("assignGlobal", Object.class, Token.class, Object.class);
+            mv.visitInsn(Opcodes.POP);
+            releaseTemp();
+        } else {
+            storeSlot(stmt.slot);
+        }
+        releaseTemp();
+        return null;
+    }
+
+    // takes the value from the stack, top level declarations of a script define globals
+    private void declare(Token name, int slot) {
+        if (!isGlobal()) {
+            storeSlot(slot);
+            return;
+        }
+        final int value = allocateTemp();
+        mv.visitVarInsn(Opcodes.ASTORE, value);
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(name, Token.class);
+        mv.visitVarInsn(Opcodes.ALOAD, value);
+        invokeInterpreter("defineGlobal", void.class, Token.class, Object.class);
+        releaseTemp();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        mv.visitInsn(Opcodes.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+        pushConstant(stmt, Stmt.Function.class);
+        invokeInterpreter("closure", LoxFunction.class, Frame.class, Stmt.Function.class);
+        declare(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        final Label elseBranch = new Label();
+        final Label end = new Label();
+        condition(stmt.condition);
+        mv.visitJumpInsn(Opcodes.IFEQ, elseBranch);
+        stmt.thenBranch.accept(this);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(elseBranch);
+        if (stmt.elseBranch != null) {
+            stmt.elseBranch.accept(this);
+        }
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        stmt.expression.accept(this);
+        invokeInterpreter("print", void.class, Object.class);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            // a call in tail position gives TailCall.PENDING, which is returned as it is
+            stmt.value.accept(this);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null && isGlobal()) {
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(stmt.name, Token.class);
+            invokeInterpreter("declareGlobal", void.class, Token.class);
+            return null;
+        }
+        if (stmt.initializer == null) {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(Environment.class), "UNINITIALIZED", OBJECT_DESC);
+        } else {
+            stmt.initializer.accept(this);
+        }
+        declare(stmt.name, stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        final Label start = new Label();
+        final Label end = new Label();
+        mv.visitLabel(start);
+        condition(stmt.condition);
+        mv.visitJumpInsn(Opcodes.IFEQ, end);
+        stmt.body.accept(this);
+        mv.visitJumpInsn(Opcodes.GOTO, start);
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        expr.value.accept(this);
+        if (expr.local != -1) {
+            mv.visitInsn(Opcodes.DUP);
+            storeSlot(expr.local);
+        } else if (expr.upvalue != -1) {
+            mv.visitInsn(Opcodes.DUP);
+            storeUpvalue(expr.upvalue);
+        } else {
+            final int value = allocateTemp();
+            mv.visitVarInsn(Opcodes.ASTORE, value);
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(expr.name, Token.class);
+            mv.visitVarInsn(Opcodes.ALOAD, value);
+            invokeInterpreter("assignGlobal", Object.class, Token.class, Object.class);
+            releaseTemp();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                expr.left.accept(this);
+                expr.right.accept(this);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "isEqual",
+                        "(" + OBJECT_DESC + OBJECT_DESC + ")Z", false);
+                if (expr.operator.type == TokenType.BANG_EQUAL) {
+                    negateBoolean();
+                }
+                boxBoolean();
+                return null;
+        }
+
+        if (profiled && !expr.node.speculatesNumbers()) {
+            pushConstant(expr, Expr.Binary.class);
+            expr.left.accept(this);
+            expr.right.accept(this);
+            invokeBinaryNode();
+            return null;
+        }
+
+        switch (expr.operator.type) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+                boxedDouble(expr);
+                return null;
+        }
+
+        final int left = allocateDoubleTemp();
+        final int right = allocateDoubleTemp();
+        final int leftObject = allocateTemp();
+        final int rightObject = allocateTemp();
+        final Label generic = new Label();
+        final Label end = new Label();
+        doubleOperands(expr, left, right, leftObject, rightObject, generic);
+        mv.visitVarInsn(Opcodes.DLOAD, left);
+        mv.visitVarInsn(Opcodes.DLOAD, right);
+        switch (expr.operator.type) {
+            // dcmpg gives 1 and dcmpl gives -1 for NaN, which makes the comparison false like in Java
+            case GREATER: comparison(Opcodes.DCMPL, Opcodes.IFLE); break;
+            case GREATER_EQUAL: comparison(Opcodes.DCMPL, Opcodes.IFLT); break;
+            case LESS: comparison(Opcodes.DCMPG, Opcodes.IFGE); break;
+            case LESS_EQUAL: comparison(Opcodes.DCMPG, Opcodes.IFGT); break;
+            default: throw new Unsupported("number operator " + expr.operator.lexeme);
+        }
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+
+        // the operands are not numbers after all, the node generalizes like in the Interpreter
+        mv.visitLabel(generic);
+        pushConstant(expr, Expr.Binary.class);
+        mv.visitVarInsn(Opcodes.ALOAD, leftObject);
+        mv.visitVarInsn(Opcodes.ALOAD, rightObject);
+        invokeBinaryNode();
+        mv.visitLabel(end);
+
+        releaseTemp();
+        releaseTemp();
+        releaseDoubleTemp();
+        releaseDoubleTemp();
+        return null;
+    }
+
+    private boolean speculatesNumbers(Expr.Binary expr) {
+        return !profiled || expr.node.speculatesNumbers();
+    }
+
+    private static boolean isArithmetic(Expr.Binary expr) {
+        switch (expr.operator.type) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the value of a number expression, boxed once it is computed
+    private void boxedDouble(Expr expr) {
+        final int boxed = allocateTemp();
+        final Label notNumber = new Label();
+        final Label end = new Label();
+        doubleValue(expr, notNumber, boxed);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";", false);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(notNumber);
+        mv.visitVarInsn(Opcodes.ALOAD, boxed);
+        mv.visitLabel(end);
+        releaseTemp();
+    }
+
+    // leaves the value as a primitive double, or jumps to notNumber with the value in the local boxed when it is
+    // not a number, so nested arithmetic passes doubles between its operations
+    // values live in locals while an operand is evaluated, the stack is the same at every jump to notNumber
+    private void doubleValue(Expr expr, Label notNumber, int boxed) {
+        if (expr instanceof Expr.Grouping) {
+            doubleValue(((Expr.Grouping) expr).expression, notNumber, boxed);
+            return;
+        }
+        if (expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double) {
+            mv.visitLdcInsn(((Expr.Literal) expr).value);
+            return;
+        }
+        if (expr instanceof Expr.Binary && isArithmetic((Expr.Binary) expr) && speculatesNumbers((Expr.Binary) expr)) {
+            arithmetic((Expr.Binary) expr, notNumber, boxed);
+            return;
+        }
+        if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            negation((Expr.Unary) expr, notNumber, boxed);
+            return;
+        }
+        expr.accept(this);
+        unboxOrJump(notNumber, boxed);
+    }
+
+    private void arithmetic(Expr.Binary expr, Label notNumber, int boxed) {
+        final int left = allocateDoubleTemp();
+        final int right = allocateDoubleTemp();
+        final int leftObject = allocateTemp();
+        final int rightObject = allocateTemp();
+        final Label generic = new Label();
+        final Label end = new Label();
+        doubleOperands(expr, left, right, leftObject, rightObject, generic);
+        mv.visitVarInsn(Opcodes.DLOAD, left);
+        mv.visitVarInsn(Opcodes.DLOAD, right);
+        switch (expr.operator.type) {
+            case PLUS: mv.visitInsn(Opcodes.DADD); break;
+            case MINUS: mv.visitInsn(Opcodes.DSUB); break;
+            case STAR: mv.visitInsn(Opcodes.DMUL); break;
+            case SLASH: mv.visitInsn(Opcodes.DDIV); break;
+            default: throw new Unsupported("number operator " + expr.operator.lexeme);
+        }
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+
+        // the operands are not numbers after all, the node generalizes like in the Interpreter
+        mv.visitLabel(generic);
+        pushConstant(expr, Expr.Binary.class);
+        mv.visitVarInsn(Opcodes.ALOAD, leftObject);
+        mv.visitVarInsn(Opcodes.ALOAD, rightObject);
+        invokeBinaryNode();
+        unboxOrJump(notNumber, boxed);
+        mv.visitLabel(end);
+
+        releaseTemp();
+        releaseTemp();
+        releaseDoubleTemp();
+        releaseDoubleTemp();
+    }
+
+    private void negation(Expr.Unary expr, Label notNumber, int boxed) {
+        final int operand = allocateTemp();
+        final Label failed = new Label();
+        final Label end = new Label();
+        doubleValue(expr.right, failed, operand);
+        mv.visitInsn(Opcodes.DNEG);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        // reports the error
+        mv.visitLabel(failed);
+        pushConstant(expr.operator, Token.class);
+        mv.visitVarInsn(Opcodes.ALOAD, operand);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "negate",
+                Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(Token.class), Type.getType(Object.class)),
+                false);
+        unboxOrJump(notNumber, boxed);
+        mv.visitLabel(end);
+        releaseTemp();
+    }
+
+    // both operands as doubles in left and right, or both boxed in the object locals after a jump to generic
+    private void doubleOperands(Expr.Binary expr, int left, int right, int leftObject, int rightObject, Label generic) {
+        final Label leftFailed = new Label();
+        final Label rightFailed = new Label();
+        final Label done = new Label();
+        doubleValue(expr.left, leftFailed, leftObject);
+        mv.visitVarInsn(Opcodes.DSTORE, left);
+        doubleValue(expr.right, rightFailed, rightObject);
+        mv.visitVarInsn(Opcodes.DSTORE, right);
+        mv.visitJumpInsn(Opcodes.GOTO, done);
+
+        mv.visitLabel(leftFailed);
+        expr.right.accept(this);
+        mv.visitVarInsn(Opcodes.ASTORE, rightObject);
+        mv.visitJumpInsn(Opcodes.GOTO, generic);
+
+        mv.visitLabel(rightFailed);
+        mv.visitVarInsn(Opcodes.DLOAD, left);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, DOUBLE, "valueOf", "(D)L" + DOUBLE + ";", false);
+        mv.visitVarInsn(Opcodes.ASTORE, leftObject);
+        mv.visitJumpInsn(Opcodes.GOTO, generic);
+        mv.visitLabel(done);
+    }
+
+    // takes an object from the stack and leaves it as a double, or stores it in boxed and jumps to notNumber
+    private void unboxOrJump(Label notNumber, int boxed) {
+        final Label number = new Label();
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitTypeInsn(Opcodes.INSTANCEOF, DOUBLE);
+        mv.visitJumpInsn(Opcodes.IFNE, number);
+        mv.visitVarInsn(Opcodes.ASTORE, boxed);
+        mv.visitJumpInsn(Opcodes.GOTO, notNumber);
+        mv.visitLabel(number);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, DOUBLE);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D", false);
+    }
+
+    // jumpIfFalse tests the result of the compare instruction
+    private void comparison(int compare, int jumpIfFalse) {
+        final Label isFalse = new Label();
+        final Label end = new Label();
+        mv.visitInsn(compare);
+        mv.visitJumpInsn(jumpIfFalse, isFalse);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, BOOLEAN, "TRUE", "L" + BOOLEAN + ";");
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, BOOLEAN, "FALSE", "L" + BOOLEAN + ";");
+        mv.visitLabel(end);
+    }
+
+    private void invokeBinaryNode() {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(BinaryNode.class), "dispatch",
+                Type.getMethodDescriptor(Type.getType(Object.class),
+                        Type.getType(Expr.Binary.class), Type.getType(Object.class), Type.getType(Object.class)),
+                false);
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            final Expr.Get get = (Expr.Get) expr.callee;
+            final int object = allocateTemp();
+            final int entry = allocateTemp();
+            get.object.accept(this);
+            mv.visitVarInsn(Opcodes.ASTORE, object);
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(get, Expr.Get.class);
+            mv.visitVarInsn(Opcodes.ALOAD, object);
+            invokeInterpreter("lookUpInvoke", InlineCache.Entry.class, Expr.Get.class, Object.class);
+            mv.visitVarInsn(Opcodes.ASTORE, entry);
+
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(expr, Expr.Call.class);
+            mv.visitVarInsn(Opcodes.ALOAD, object);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(LoxInstance.class));
+            mv.visitVarInsn(Opcodes.ALOAD, entry);
+            arguments(expr);
+            invokeInterpreter("invoke", Object.class,
+                    Expr.Call.class, LoxInstance.class, InlineCache.Entry.class, List.class);
+            releaseTemp();
+            releaseTemp();
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super) {
+            final Expr.Super callee = (Expr.Super) expr.callee;
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(expr, Expr.Call.class);
+            superMethod(callee);
+            loadVariable(callee.keyword, callee.thisLocal, callee.thisUpvalue);
+            arguments(expr);
+            invokeInterpreter("invokeSuper", Object.class, Expr.Call.class, LoxFunction.class, Object.class, List.class);
+            return null;
+        }
+
+        // linked by the LoxCallSite, arguments are passed one by one
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(expr, Expr.Call.class);
+        expr.callee.accept(this);
+        final StringBuilder descriptor = new StringBuilder("(")
+                .append(Type.getDescriptor(Interpreter.class))
+                .append(Type.getDescriptor(Expr.Call.class))
+                .append(OBJECT_DESC);
+        for (Expr argument : expr.arguments) {
+            argument.accept(this);
+            descriptor.append(OBJECT_DESC);
+        }
+        descriptor.append(")").append(OBJECT_DESC);
+        mv.visitInvokeDynamicInsn("call", descriptor.toString(), CALL_SITE);
+        return null;
+    }
+
+    private void arguments(Expr.Call expr) {
+        mv.visitTypeInsn(Opcodes.NEW, ARRAY_LIST);
+        mv.visitInsn(Opcodes.DUP);
+        pushInt(expr.arguments.size());
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ARRAY_LIST, "<init>", "(I)V", false);
+        for (Expr argument : expr.arguments) {
+            mv.visitInsn(Opcodes.DUP);
+            argument.accept(this);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ARRAY_LIST, "add", "(" + OBJECT_DESC + ")Z", false);
+            mv.visitInsn(Opcodes.POP);
+        }
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(expr, Expr.Get.class);
+        expr.object.accept(this);
+        invokeInterpreter("getProperty", Object.class, Expr.Get.class, Object.class);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        final Object value = expr.value;
+        if (value == null) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else if (value instanceof Boolean) {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, BOOLEAN, (boolean) value ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+        } else if (value instanceof String) {
+            mv.visitLdcInsn(value);
+        } else {
+            // the boxed number of the literal, so that no Double is made for it
+            pushConstant(value, Object.class);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        final Label end = new Label();
+        expr.left.accept(this);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z", false);
+        mv.visitJumpInsn(expr.operator.type == TokenType.OR ? Opcodes.IFNE : Opcodes.IFEQ, end);
+        mv.visitInsn(Opcodes.POP);
+        expr.right.accept(this);
+        mv.visitLabel(end);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(expr, Expr.Set.class);
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(expr, Expr.Set.class);
+        expr.object.accept(this);
+        invokeInterpreter("fieldTarget", LoxInstance.class, Expr.Set.class, Object.class);
+        expr.value.accept(this);
+        invokeInterpreter("setProperty", Object.class, Expr.Set.class, LoxInstance.class, Object.class);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        superMethod(expr);
+        loadVariable(expr.keyword, expr.thisLocal, expr.thisUpvalue);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(LoxInstance.class));
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(LoxFunction.class), "bind",
+                Type.getMethodDescriptor(Type.getType(LoxFunction.class), Type.getType(LoxInstance.class)), false);
+        return null;
+    }
+
+    // leaves the method of the superclass on the stack
+    private void superMethod(Expr.Super expr) {
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        pushConstant(expr, Expr.Super.class);
+        loadVariable(expr.keyword, expr.local, expr.upvalue);
+        invokeInterpreter("superMethod", LoxFunction.class, Expr.Super.class, Object.class);
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        loadVariable(expr.keyword, expr.local, expr.upvalue);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) {
+            expr.right.accept(this);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z", false);
+            negateBoolean();
+            boxBoolean();
+            return null;
+        }
+
+        boxedDouble(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        loadVariable(expr.name, expr.local, expr.upvalue);
+        return null;
+    }
+
+    private void loadVariable(Token name, int local, int upvalue) {
+        if (local != -1) {
+            loadSlot(local);
+        } else if (upvalue != -1) {
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            loadUpvalue(upvalue);
+            invokeInterpreter("getUpvalue", Object.class, Upvalue.class);
+        } else {
+            mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+            pushConstant(name, Token.class);
+            invokeInterpreter("lookUpGlobal", Object.class, Token.class);
+            return;
+        }
+
+        final Label initialized = new Label();
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(Environment.class), "UNINITIALIZED", OBJECT_DESC);
+        mv.visitJumpInsn(Opcodes.IF_ACMPNE, initialized);
+        pushConstant(name, Token.class);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "uninitialized",
+                Type.getMethodDescriptor(Type.getType(RuntimeError.class), Type.getType(Token.class)), false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(initialized);
+    }
+
+    private void loadSlot(int slot) {
+        if (captured[slot]) {
+            mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+            pushInt(slot);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, FRAME, "get", "(I)" + OBJECT_DESC, false);
+        } else {
+            mv.visitVarInsn(Opcodes.ALOAD, FIRST_SLOT + slot);
+        }
+    }
+
+    // takes the value from the stack
+    private void storeSlot(int slot) {
+        if (!captured[slot]) {
+            mv.visitVarInsn(Opcodes.ASTORE, FIRST_SLOT + slot);
+            return;
+        }
+        final int value = allocateTemp();
+        mv.visitVarInsn(Opcodes.ASTORE, value);
+        mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+        pushInt(slot);
+        mv.visitVarInsn(Opcodes.ALOAD, value);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, FRAME, "set", "(I" + OBJECT_DESC + ")V", false);
+        releaseTemp();
+    }
+
+    private void loadUpvalue(int upvalue) {
+        mv.visitVarInsn(Opcodes.ALOAD, FRAME_LOCAL);
+        mv.visitFieldInsn(Opcodes.GETFIELD, FRAME, "upvalues", "[L" + UPVALUE + ";");
+        pushInt(upvalue);
+        mv.visitInsn(Opcodes.AALOAD);
+    }
+
+    // takes the value from the stack, the Interpreter copies frozen upvalues before writing
+    private void storeUpvalue(int upvalue) {
+        final int value = allocateTemp();
+        mv.visitVarInsn(Opcodes.ASTORE, value);
+        mv.visitVarInsn(Opcodes.ALOAD, INTERPRETER_LOCAL);
+        loadUpvalue(upvalue);
+        mv.visitVarInsn(Opcodes.ALOAD, value);
+        invokeInterpreter("setUpvalue", void.class, Upvalue.class, Object.class);
+        releaseTemp();
+    }
+
+    // leaves 0 or 1 on the stack
+    private void condition(Expr expr) {
+        expr.accept(this);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z", false);
+    }
+
+    private void negateBoolean() {
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IXOR);
+    }
+
+    private void boxBoolean() {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, BOOLEAN, "valueOf", "(Z)L" + BOOLEAN + ";", false);
+    }
+
+
+    private void invokeInterpreter(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        final Type[] types = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            types[i] = Type.getType(parameterTypes[i]);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, INTERPRETER, name,
+                Type.getMethodDescriptor(Type.getType(returnType), types), false);
+    }
+
+    private void pushConstant(Object value, Class<?> type) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, THIS);
+        mv.visitFieldInsn(Opcodes.GETFIELD, className, "constants", "[" + OBJECT_DESC);
+        pushInt(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        if (type != Object.class) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+    private void pushInt(int value) {
+        pushInt(mv, value);
+    }
+
+    static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private int allocateTemp() {
+        return nextTemp++;
+    }
+
+    private void releaseTemp() {
+        nextTemp--;
+    }
+
+    // a double takes two locals
+    private int allocateDoubleTemp() {
+        final int temp = nextTemp;
+        nextTemp += 2;
+        return temp;
+    }
+
+    private void releaseDoubleTemp() {
+        nextTemp -= 2;
+    }
+
+    // the function uses something this compiler does not handle
+    static class Unsupported extends RuntimeException {
+        Unsupported(String what) {
+            super(what, null, false, false);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package io.github.rohitdm97.loximpl.core;
+
+// what the Jit knows about one function declaration, shared by every closure made from it
+// a CompiledScript shares its declarations between engines on several threads, the code is published through a
+// volatile field so no thread sees a half constructed class, two threads reaching the threshold together at worst
+// both compile the function
+class JitProfile {
+    // calls plus loop iterations run by the Interpreter, increments racing on several threads may get lost
+    int counter = 0;
+    // set once compiled, by the Jit or ahead of time by the AotCompiler, only engines with a Jit run it
+    volatile CompiledFunction code = null;
+    // the body uses something the Jit does not compile, it stays with the Interpreter
+    volatile boolean rejected = false;
+}
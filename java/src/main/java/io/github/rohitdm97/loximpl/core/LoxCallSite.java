@@ -0,0 +1,135 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Call site of compiled code calling a value, bound by the invokedynamic instructions the {@link JitCompiler} emits
+ * <p>
+ * The site starts unlinked. Every callee it sees is put in front of a chain of guarded targets, functions are
+ * matched by their declaration, classes by their root {@link Shape}, which the classes of one declaration share,
+ * and natives by their type. Nothing is matched by identity, so a site keeps its targets for closures and classes
+ * made again, also by later runs of the script, and a monomorphic site becomes a single check followed by a direct
+ * call HotSpot can inline. Natives are called through the Interpreter, which reports their
+ * errors at the call. The guards stand in for the arity check, the callee was checked
+ * when it was linked. After {@link #MAX_TARGETS} callees the site gives up and calls through the Interpreter, so
+ * do sites in tail position, which need its trampoline.
+ */
+class LoxCallSite extends MutableCallSite {
+    private static final int MAX_TARGETS = 4;
+
+    private static final MethodHandle FALLBACK;
+    private static final MethodHandle GENERIC;
+    private static final MethodHandle CALL_FUNCTION;
+    private static final MethodHandle CALL_CLASS;
+    private static final MethodHandle IS_DECLARED_BY;
+    private static final MethodHandle HAS_ROOT_SHAPE;
+    private static final MethodHandle IS_NATIVE;
+    private static final MethodHandle AS_LIST;
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodType call = MethodType.methodType(Object.class, Interpreter.class, List.class);
+        try {
+            FALLBACK = lookup.findVirtual(LoxCallSite.class, "fallback",
+                    MethodType.methodType(Object.class, Interpreter.class, Expr.Call.class, Object.class, Object[].class));
+            GENERIC = lookup.findVirtual(Interpreter.class, "call",
+                    MethodType.methodType(Object.class, Expr.Call.class, Object.class, List.class));
+            CALL_FUNCTION = lookup.findVirtual(LoxFunction.class, "call", call);
+            CALL_CLASS = lookup.findVirtual(LoxClass.class, "call", call);
+            IS_DECLARED_BY = lookup.findStatic(LoxCallSite.class, "isDeclaredBy",
+                    MethodType.methodType(boolean.class, Object.class, Stmt.Function.class));
+            HAS_ROOT_SHAPE = lookup.findStatic(LoxCallSite.class, "hasRootShape",
+                    MethodType.methodType(boolean.class, Object.class, Shape.class));
+            IS_NATIVE = lookup.findStatic(LoxCallSite.class, "isNative",
+                    MethodType.methodType(boolean.class, Object.class));
+            AS_LIST = lookup.findStatic(Arrays.class, "asList", MethodType.methodType(List.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // arguments passed at this site
+    private final int arity;
+    private int targets = 0;
+
+    // the type is (Interpreter, Expr.Call, callee, arguments...) -> Object
+    static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type) {
+        return new LoxCallSite(type);
+    }
+
+    private LoxCallSite(MethodType type) {
+        super(type);
+        this.arity = type.parameterCount() - 3;
+        setTarget(adapt(FALLBACK.bindTo(this)));
+    }
+
+    private Object fallback(Interpreter interpreter, Expr.Call expr, Object callee, Object[] arguments) {
+        if (expr.tail) {
+            setTarget(adapt(GENERIC));
+        } else if (callee instanceof LoxCallable && ((LoxCallable) callee).arity() == arity) {
+            link(callee);
+        }
+        // also reports the errors
+        return interpreter.call(expr, callee, Arrays.asList(arguments));
+    }
+
+    private void link(Object callee) {
+        if (targets == MAX_TARGETS) {
+            setTarget(adapt(GENERIC));
+            return;
+        }
+        targets++;
+
+        final MethodHandle test;
+        final MethodHandle target;
+        if (callee instanceof LoxFunction) {
+            // closures of one declaration share a target, they only differ in their upvalues
+            test = MethodHandles.insertArguments(IS_DECLARED_BY, 1, ((LoxFunction) callee).declaration);
+            target = direct(CALL_FUNCTION);
+        } else if (callee instanceof LoxClass) {
+            // classes sharing the root shape have the same methods, initializer included
+            test = MethodHandles.insertArguments(HAS_ROOT_SHAPE, 1, ((LoxClass) callee).getRootShape());
+            target = direct(CALL_CLASS);
+        } else {
+            // the Interpreter checks the arity of natives again
+            test = IS_NATIVE;
+            target = GENERIC;
+        }
+        final MethodHandle guard = MethodHandles.dropArguments(test, 0, Interpreter.class, Expr.Call.class);
+        setTarget(MethodHandles.guardWithTest(guard, adapt(target), getTarget()));
+    }
+
+    // (callee, Interpreter, List) -> (Interpreter, Expr.Call, callee, List)
+    private static MethodHandle direct(MethodHandle call) {
+        return MethodHandles.permuteArguments(call,
+                MethodType.methodType(Object.class, Interpreter.class, Expr.Call.class, call.type().parameterType(0), List.class),
+                2, 0, 3);
+    }
+
+    // takes a handle accepting (Interpreter, Expr.Call, callee, List or Object[]) to the type of the site
+    private MethodHandle adapt(MethodHandle handle) {
+        if (handle.type().parameterType(3) == List.class) {
+            handle = MethodHandles.filterArguments(handle, 3, AS_LIST);
+        }
+        return handle.asCollector(Object[].class, arity).asType(type());
+    }
+
+    private static boolean isDeclaredBy(Object callee, Stmt.Function declaration) {
+        return callee instanceof LoxFunction && ((LoxFunction) callee).declaration == declaration;
+    }
+
+    private static boolean hasRootShape(Object callee, Shape rootShape) {
+        return callee instanceof LoxClass && ((LoxClass) callee).getRootShape() == rootShape;
+    }
+
+    private static boolean isNative(Object callee) {
+        return callee instanceof NativeFunction;
+    }
+
+}
@@ -1,17 +1,56 @@
 package io.github.rohitdm97.loximpl.core;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 // class is callable, it returns a new instance of the class
-@RequiredArgsConstructor
 public class LoxClass implements LoxCallable {
 
     private final String name;
-    private final LoxClass superClass;
+    // own methods together with the inherited ones not overridden, fixed once the class is declared
     private final Map<String, LoxFunction> methods;
+    // the same methods by the slots the root shape gives them
+    private final LoxFunction[] methodSlots;
+    // null when neither the class nor its superclasses declare init
+    private final LoxFunction initializer;
+    // instances start with this shape and no fields
+    @Getter
+    private final Shape rootShape;
+    // number of fields instances ended up with so far, new instances allocate that much room upfront
+    @Getter
+    private int expectedFields = 0;
+
+    public LoxClass(String name, LoxClass superClass, Map<String, LoxFunction> methods) {
+        this(name, superClass, methods, null);
+    }
+
+    // shares its shapes with the other classes made from the declaration
+    LoxClass(Stmt.Class declaration, LoxClass superClass, Map<String, LoxFunction> methods) {
+        this(declaration.name.lexeme, superClass, methods, declaration);
+    }
+
+    private LoxClass(String name, LoxClass superClass, Map<String, LoxFunction> methods, Stmt.Class declaration) {
+        this.name = name;
+        final Map<String, LoxFunction> table = new HashMap<>();
+        if (superClass != null) {
+            table.putAll(superClass.methods);
+        }
+        table.putAll(methods);
+        this.methods = Collections.unmodifiableMap(table);
+        this.initializer = table.get("init");
+
+        this.rootShape = declaration == null
+                ? new Shape(table.keySet())
+                : Shape.root(declaration, superClass, table.keySet());
+        this.methodSlots = new LoxFunction[rootShape.methodCount()];
+        for (Map.Entry<String, LoxFunction> method : table.entrySet()) {
+            methodSlots[rootShape.methodOf(method.getKey())] = method.getValue();
+        }
+    }
 
     @Override
     public String toString() {
@@ -20,7 +59,6 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         return initializer.arity();
     }
@@ -28,23 +66,26 @@ public class LoxClass implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
         final LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
+        if (Stats.ENABLED) interpreter.stats.instances.increment();
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.call(interpreter, instance, arguments);
         }
         return instance;
     }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
+    void expectFields(int count) {
+        if (count > expectedFields) {
+            expectedFields = count;
         }
+    }
 
-        if (superClass != null) {
-            return superClass.findMethod(name);
-        }
+    public LoxFunction findMethod(String name) {
+        return methods.get(name);
+    }
 
-        return null;
+    // the slot comes from the root shape
+    LoxFunction methodAt(int slot) {
+        return methodSlots[slot];
     }
 
 }
@@ -0,0 +1,54 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// handle spawn returns, join waits for the function to return and gives its result
+class LoxFiber {
+    private final FutureTask<Object> task;
+    // errors of fibers nobody joined are reported when the run ends
+    private volatile boolean joined = false;
+
+    LoxFiber(Interpreter interpreter, LoxCallable function) {
+        this.task = new FutureTask<>(() -> function.call(interpreter, List.of()));
+    }
+
+    void run() {
+        task.run();
+    }
+
+    // rethrows the error the function failed with
+    Object join() throws InterruptedException {
+        joined = true;
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw unchecked(e.getCause());
+        }
+    }
+
+    // waits for the function to return, null unless it failed and nobody joined it
+    Throwable await() throws InterruptedException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (!joined) {
+                return e.getCause();
+            }
+        }
+        return null;
+    }
+
+    // errors are thrown right away, anything checked is wrapped
+    static RuntimeException unchecked(Throwable failure) {
+        if (failure instanceof Error) throw (Error) failure;
+        return failure instanceof RuntimeException ? (RuntimeException) failure : new IllegalStateException(failure);
+    }
+
+    @Override
+    public String toString() {
+        return "<fiber>";
+    }
+
+}
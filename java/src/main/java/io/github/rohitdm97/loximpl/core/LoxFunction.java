@@ -1,15 +1,42 @@
 package io.github.rohitdm97.loximpl.core;
 
-import lombok.RequiredArgsConstructor;
-
 import java.util.List;
 
-@RequiredArgsConstructor
 class LoxFunction implements LoxCallable {
 
-    private final Stmt.Function declaration;
-    private final Environment closure;
+    final Stmt.Function declaration;
+    // only the variables of enclosing functions this one uses
+    private final Upvalue[] upvalues;
+    // methods keep 'this' in slot 0 of their frame, ahead of the parameters
+    private final boolean isMethod;
     private final boolean isInitializer;
+    // set only on bound methods, which are made when a method is used as a value
+    private final LoxInstance receiver;
+
+    LoxFunction(Stmt.Function declaration, Upvalue[] upvalues) {
+        this(declaration, upvalues, false, false, null);
+    }
+
+    LoxFunction(Stmt.Function declaration, Upvalue[] upvalues, boolean isInitializer) {
+        this(declaration, upvalues, true, isInitializer, null);
+    }
+
+    private LoxFunction(Stmt.Function declaration, Upvalue[] upvalues, boolean isMethod, boolean isInitializer, LoxInstance receiver) {
+        this.declaration = declaration;
+        this.upvalues = upvalues;
+        this.isMethod = isMethod;
+        this.isInitializer = isInitializer;
+        this.receiver = receiver;
+    }
+
+    Upvalue[] upvalues() {
+        return upvalues;
+    }
+
+    // null unless bound
+    LoxInstance receiver() {
+        return receiver;
+    }
 
     @Override
     public int arity() {
@@ -18,22 +45,61 @@ class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
+        return call(interpreter, receiver, arguments);
+    }
 
-        try {
-            interpreter.executeBlockUsingEnvironment(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) {
-                return closure.get("this");
+    // calls a method on the receiver without binding it first, receiver is ignored by plain functions
+    Object call(Interpreter interpreter, LoxInstance receiver, List<Object> arguments) {
+        LoxFunction function = this;
+        while (true) {
+            final Completion completion = function.execute(interpreter, receiver, arguments);
+            if (completion != Completion.TAIL_CALL) {
+                if (function.isInitializer) return receiver;
+                if (completion == Completion.RETURN) {
+                    return interpreter.takeReturnValue();
+                }
+                return null;
             }
-            return returnValue.value;
+
+            // trampoline, the callee takes the place of this call instead of running inside it
+            final TailCall tailCall = interpreter.tailCall;
+            function = tailCall.function;
+            receiver = tailCall.receiver != null ? tailCall.receiver : function.receiver;
+            arguments = tailCall.arguments;
+            tailCall.clear();
+        }
+    }
+
+    private Completion execute(Interpreter interpreter, LoxInstance receiver, List<Object> arguments) {
+        final Frame frame = new Frame(declaration.frameSize, upvalues);
+        if (Stats.ENABLED) {
+            interpreter.stats.calls.increment();
+            interpreter.stats.environments.increment();
+        }
+        int slot = 0;
+        if (isMethod) {
+            frame.set(slot++, receiver);
+        }
+        for (Object argument : arguments) {
+            frame.set(slot++, argument);
+        }
+
+        // a tree-walking engine interprets even functions an engine with a Jit sharing the script has compiled
+        final CompiledFunction code = interpreter.jit == null ? null : interpreter.jit.compiled(declaration, isMethod);
+        if (code != null) {
+            final Object result = code.invoke(interpreter, frame);
+            frame.close(0);
+            if (result == TailCall.PENDING) return Completion.TAIL_CALL;
+            interpreter.returnValue(result);
+            return Completion.RETURN;
+        }
+        if (interpreter.jit != null) {
+            frame.profile = declaration.profile;
         }
 
-        if (isInitializer) return closure.get("this");
-        return null;
+        final Completion completion = interpreter.executeBlock(declaration.body, frame);
+        frame.close(0);
+        return completion;
     }
 
     @Override
@@ -42,9 +108,7 @@ class LoxFunction implements LoxCallable {
     }
 
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, upvalues, isMethod, isInitializer, instance);
     }
 
 }
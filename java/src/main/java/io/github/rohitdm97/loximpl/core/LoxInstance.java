@@ -1,42 +1,76 @@
 package io.github.rohitdm97.loximpl.core;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-@RequiredArgsConstructor
 public class LoxInstance {
+    private static final Object[] EMPTY = new Object[0];
 
+    @Getter
     private final LoxClass klass;
-    private final Map<String, Value> fields = new HashMap<>();
+    // field names live in the shape, only the values are kept per instance
+    @Getter
+    private Shape shape;
+    private Object[] values;
+    // reached by an environment snapshot, see Freezer
+    private boolean frozen = false;
+
+    public LoxInstance(LoxClass klass) {
+        this.klass = klass;
+        this.shape = klass.getRootShape();
+        final int expected = klass.getExpectedFields();
+        this.values = expected == 0 ? EMPTY : new Object[expected];
+    }
+
+    // unfrozen, for an environment writing to a frozen instance
+    private LoxInstance(LoxInstance original) {
+        this.klass = original.klass;
+        this.shape = original.shape;
+        this.values = original.values.clone();
+    }
+
+    LoxInstance copy() {
+        return new LoxInstance(this);
+    }
 
     @Override
     public String toString() {
         return String.format("<instance %s>", klass.toString());
     }
 
-    Value get(String name) {
-        if (fields.containsKey(name)) {
-            return fields.get(name);
-        }
-
-        LoxFunction method = klass.findMethod(name);
-        if (method != null) return new Value(method.bind(this));
+    Object getField(int slot) {
+        return values[slot];
+    }
 
-        return null;
+    boolean isFrozen() {
+        return frozen;
     }
 
-    public void setField(String key, Object value) {
-        fields.put(key, new Value(value));
+    void freeze() {
+        frozen = true;
     }
 
-    @RequiredArgsConstructor
-    public static class Value {
-        private final Object object;
+    // the slot comes from a lookup of the field in the current shape, or in shape when the field is new
+    void setField(Shape shape, int slot, Object value) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+            klass.expectFields(slot + 1);
+        }
+        values[slot] = value;
+        this.shape = shape;
+    }
 
-        public Object unwrap() {
-            return object;
+    public void setField(String key, Object value) {
+        if (frozen) {
+            throw new IllegalStateException("Instance is frozen");
+        }
+        int slot = shape.slotOf(key);
+        if (slot == -1) {
+            final Shape next = shape.with(key);
+            setField(next, next.slotOf(key), value);
+        } else {
+            setField(shape, slot, value);
         }
     }
 
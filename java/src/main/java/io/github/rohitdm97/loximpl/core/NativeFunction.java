@@ -0,0 +1,43 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.List;
+
+// function implemented in Java, the Interpreter defines them in the globals
+final class NativeFunction implements LoxCallable {
+
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    NativeFunction(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    // runs on the Interpreter calling it, which may be the one of a fiber
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+
+    // thrown by a body, the Interpreter reports it at the call
+    static class Failure extends RuntimeException {
+        Failure(String message) {
+            super(message);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runtime objects of the bytecode backend, these mirror the objects of c/object.h
+ * <p>
+ * string representations are kept identical to {@link LoxFunction}, {@link LoxClass} and {@link LoxInstance}
+ * so that both backends print the same output
+ */
+abstract class Obj {
+
+    static class Function extends Obj {
+        final String name;
+        final Chunk chunk = new Chunk();
+        int arity;
+        int upvalueCount;
+
+        Function(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            if (name == null) return "<script>";
+            return String.format("<fn %s>", name);
+        }
+    }
+
+    static class Native extends Obj {
+        final int arity;
+        final Body body;
+
+        Native(int arity, Body body) {
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+
+        interface Body {
+            Object call(List<Object> arguments);
+        }
+    }
+
+    static class Closure extends Obj {
+        final Function function;
+        final Upvalue[] upvalues;
+
+        Closure(Function function) {
+            this.function = function;
+            this.upvalues = new Upvalue[function.upvalueCount];
+        }
+
+        @Override
+        public String toString() {
+            return function.toString();
+        }
+    }
+
+    // refers to a stack slot while open, holds the value itself once closed
+    static class Upvalue extends Obj {
+        final int slot;
+        Object closed;
+        boolean open = true;
+        Upvalue next;
+        // reached by an environment snapshot, see Freezer
+        boolean frozen = false;
+
+        Upvalue(int slot, Upvalue next) {
+            this.slot = slot;
+            this.next = next;
+        }
+
+        // closed and unfrozen, for an environment assigning a frozen variable, which is closed as the frames of a
+        // snapshot returned before it was taken
+        Upvalue copy() {
+            final Upvalue copy = new Upvalue(slot, null);
+            copy.open = false;
+            copy.closed = closed;
+            return copy;
+        }
+    }
+
+    static class Class extends Obj {
+        final String name;
+        final Map<String, Closure> methods = new HashMap<>();
+        Closure initializer;
+
+        Class(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<class %s>", name);
+        }
+    }
+
+    static class Instance extends Obj {
+        final Class klass;
+        final Map<String, Object> fields = new HashMap<>();
+        // reached by an environment snapshot, see Freezer
+        boolean frozen = false;
+
+        Instance(Class klass) {
+            this.klass = klass;
+        }
+
+        // unfrozen, for an environment writing to a frozen instance
+        Instance copy() {
+            final Instance copy = new Instance(klass);
+            copy.fields.putAll(fields);
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<instance %s>", klass.toString());
+        }
+    }
+
+    static class BoundMethod extends Obj {
+        final Object receiver;
+        final Closure method;
+
+        BoundMethod(Object receiver, Closure method) {
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override
+        public String toString() {
+            return method.toString();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * Instruction set of the bytecode backend, see {@link Chunk} and {@link VirtualMachine}
+ * <p>
+ * Operands follow the opcode byte, constant/name indices and jump offsets are two bytes (big endian),
+ * local slots, upvalue indices and argument counts are a single byte.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    // pushes the marker of a variable declared without an initializer
+    static final byte UNINITIALIZED = 4;
+    static final byte POP = 5;
+    static final byte GET_LOCAL = 6;
+    // same as GET_LOCAL but fails on un-initialized variables, followed by the name constant
+    static final byte GET_LOCAL_CHECKED = 7;
+    static final byte SET_LOCAL = 8;
+    static final byte GET_GLOBAL = 9;
+    static final byte DEFINE_GLOBAL = 10;
+    static final byte SET_GLOBAL = 11;
+    static final byte GET_UPVALUE = 12;
+    // same as GET_UPVALUE but fails on un-initialized variables, followed by the name constant
+    static final byte GET_UPVALUE_CHECKED = 13;
+    static final byte SET_UPVALUE = 14;
+    static final byte GET_PROPERTY = 15;
+    static final byte SET_PROPERTY = 16;
+    static final byte GET_SUPER = 17;
+    static final byte EQUAL = 18;
+    static final byte NOT_EQUAL = 19;
+    static final byte GREATER = 20;
+    static final byte GREATER_EQUAL = 21;
+    static final byte LESS = 22;
+    static final byte LESS_EQUAL = 23;
+    static final byte ADD = 24;
+    static final byte SUBTRACT = 25;
+    static final byte MULTIPLY = 26;
+    static final byte DIVIDE = 27;
+    static final byte NOT = 28;
+    static final byte NEGATE = 29;
+    static final byte PRINT = 30;
+    static final byte JUMP = 31;
+    static final byte JUMP_IF_FALSE = 32;
+    static final byte LOOP = 33;
+    static final byte CALL = 34;
+    static final byte INVOKE = 35;
+    static final byte SUPER_INVOKE = 36;
+    static final byte CLOSURE = 37;
+    static final byte CLOSE_UPVALUE = 38;
+    static final byte RETURN = 39;
+    static final byte CLASS = 40;
+    static final byte INHERIT = 41;
+    static final byte METHOD = 42;
+    // CALL, INVOKE and SUPER_INVOKE of a call in tail position, the callee takes over the frame of its caller
+    static final byte TAIL_CALL = 43;
+    static final byte TAIL_INVOKE = 44;
+    static final byte TAIL_SUPER_INVOKE = 45;
+
+    private OpCode() {
+    }
+
+}
@@ -0,0 +1,319 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rewrites resolved statements into cheaper ones with the same behaviour, it runs after the {@link Resolver}
+ * <p>
+ * Subexpressions made of literals are folded, {@link Expr.Grouping} wrappers are dropped, {@code !!x} becomes
+ * {@code x} where only its truthiness matters and branches behind a constant condition are removed. Only operations
+ * that succeed are folded, an operation that would fail at runtime, like {@code 1 + "a"}, is left as it is so the
+ * error still happens when and where it did. Nodes are rebuilt only when something below them changed, rebuilt
+ * nodes keep what the Resolver wrote into the original ones.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // marks operations left for runtime, null is a valid result
+    private static final Object NOT_FOLDED = new Object();
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            final Stmt original = statements.get(i);
+            final Stmt optimized = optimize(original);
+            if (optimized != original && result == null) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null && optimized != null) {
+                result.add(optimized);
+            }
+        }
+        return result == null ? statements : result;
+    }
+
+    // null when the statement does nothing
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    // a statement that must stay, like the branch of an if
+    private Stmt optimizeRequired(Stmt stmt) {
+        final Stmt optimized = optimize(stmt);
+        if (optimized != null) return optimized;
+
+        final Stmt.Block empty = new Stmt.Block(Collections.emptyList());
+        empty.inlined = true;
+        return empty;
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // an expression whose value only matters by its truthiness
+    private Expr optimizeCondition(Expr expr) {
+        final Expr optimized = optimize(expr);
+        if (isNot(optimized) && isNot(((Expr.Unary) optimized).right)) {
+            return optimizeCondition(((Expr.Unary) ((Expr.Unary) optimized).right).right);
+        }
+        if (optimized instanceof Expr.Logical) {
+            final Expr.Logical logical = (Expr.Logical) optimized;
+            final Expr left = optimizeCondition(logical.left);
+            final Expr right = optimizeCondition(logical.right);
+            if (left != logical.left || right != logical.right) {
+                return new Expr.Logical(left, logical.operator, right);
+            }
+        }
+        return optimized;
+    }
+
+    private static boolean isNot(Expr expr) {
+        return expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        final List<Stmt> statements = optimize(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+        final Stmt.Block result = new Stmt.Block(statements);
+        result.inlined = stmt.inlined;
+        result.frameSize = stmt.frameSize;
+        result.firstSlot = stmt.firstSlot;
+        result.closesUpvalues = stmt.closesUpvalues;
+        return result;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        final List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+        boolean changed = false;
+        for (Stmt.Function method : stmt.methods) {
+            final Stmt.Function optimized = (Stmt.Function) optimize(method);
+            changed |= optimized != method;
+            methods.add(optimized);
+        }
+        if (!changed) return stmt;
+        final Stmt.Class result = new Stmt.Class(stmt.name, stmt.superclass, methods);
+        result.slot = stmt.slot;
+        result.captures = stmt.captures;
+        return result;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        final Expr expression = optimize(stmt.expression);
+        // evaluating a literal has no effect
+        if (expression instanceof Expr.Literal) return null;
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        final List<Stmt> body = optimize(stmt.body);
+        if (body == stmt.body) return stmt;
+        final Stmt.Function result = new Stmt.Function(stmt.name, stmt.params, body);
+        result.slot = stmt.slot;
+        result.frameSize = stmt.frameSize;
+        result.captures = stmt.captures;
+        return result;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        final Expr condition = optimizeCondition(stmt.condition);
+        if (condition instanceof Expr.Literal) {
+            if (Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+                return optimize(stmt.thenBranch);
+            }
+            return stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        }
+
+        final Stmt thenBranch = optimizeRequired(stmt.thenBranch);
+        final Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        final Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return stmt;
+        final Expr value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+        return new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+        final Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        final Stmt.Var result = new Stmt.Var(stmt.name, initializer);
+        result.slot = stmt.slot;
+        return result;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        final Expr condition = optimizeCondition(stmt.condition);
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+            return null;
+        }
+
+        final Stmt body = optimizeRequired(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return new Stmt.While(condition, body);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        final Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+        final Expr.Assign result = new Expr.Assign(expr.name, value);
+        result.local = expr.local;
+        result.upvalue = expr.upvalue;
+        return result;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        final Expr left = optimize(expr.left);
+        final Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            final Object folded = fold(expr.operator.type, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (folded != NOT_FOLDED) return new Expr.Literal(folded);
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String) {
+                    return (String) left + (String) right;
+                }
+                break;
+        }
+        if (!(left instanceof Double && right instanceof Double)) return NOT_FOLDED;
+
+        final double a = (double) left;
+        final double b = (double) right;
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case STAR: return a * b;
+            case SLASH: return a / b;
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+        }
+        return NOT_FOLDED;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        final Expr callee = optimize(expr.callee);
+        final List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        boolean changed = callee != expr.callee;
+        for (Expr argument : expr.arguments) {
+            final Expr optimized = optimize(argument);
+            changed |= optimized != argument;
+            arguments.add(optimized);
+        }
+        if (!changed) return expr;
+
+        final Expr.Call result = new Expr.Call(callee, expr.paren, arguments);
+        result.tail = expr.tail;
+        return result;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        final Expr object = optimize(expr.object);
+        if (object == expr.object) return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        final Expr left = optimize(expr.left);
+        if (left instanceof Expr.Literal) {
+            final boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            // the same short circuit the interpreter takes
+            final boolean shortCircuits = expr.operator.type == TokenType.OR ? truthy : !truthy;
+            return shortCircuits ? left : optimize(expr.right);
+        }
+
+        final Expr right = optimize(expr.right);
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        final Expr object = optimize(expr.object);
+        final Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        final Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal) {
+            final Object value = ((Expr.Literal) right).value;
+            if (expr.operator.type == TokenType.BANG) {
+                return new Expr.Literal(!Interpreter.isTruthy(value));
+            }
+            if (expr.operator.type == TokenType.MINUS && value instanceof Double) {
+                return new Expr.Literal(-(double) value);
+            }
+        }
+
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+}
@@ -3,13 +3,21 @@ package io.github.rohitdm97.loximpl.core;
 import io.github.rohitdm97.loximpl.error.ErrorReport;
 import lombok.RequiredArgsConstructor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Stack;
 
+/**
+ * Checks the static rules and writes where every local variable lives into the
+ * {@link Expr.Variable}, {@link Expr.Assign}, {@link Expr.This} and {@link Expr.Super} nodes
+ * <p>
+ * Each function gets one {@link Frame} at runtime, the blocks inside it keep their variables in further slots of
+ * that frame. A variable of an enclosing function becomes an upvalue: the Resolver lists for every function which
+ * variables it captures, see {@link Capture}, and refers to them by their index in that list.
+ */
 @RequiredArgsConstructor
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
     private final ErrorReport report;
     private final Stack<Scope> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
@@ -37,58 +45,115 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void beginScope() {
-        scopes.push(new Scope());
+    // scopes directly under the global scope always get a frame, there is none to share
+    private void beginScope(boolean framed) {
+        if (framed || scopes.isEmpty()) {
+            scopes.push(new Scope(new Layout(scopes.isEmpty() ? null : scopes.peek().layout)));
+        } else {
+            scopes.push(new Scope(scopes.peek().layout));
+        }
     }
 
-    private void endScope() {
-        scopes.pop();
+    private Scope endScope() {
+        final Scope scope = scopes.pop();
+        // slots of a block are free again for the statements after it
+        scope.layout.next = scope.firstSlot;
+        return scope;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+    // returns the slot of the variable, 0 for globals
+    private int declare(Token name) {
+        if (scopes.isEmpty()) return 0;
         final Scope scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
             error(name, "Already a available with this name in this scope.");
         }
-        scope.put(name.lexeme, false);
+        final Variable variable = new Variable(scope.layout.allocate());
+        scope.put(name.lexeme, variable);
+        return variable.slot;
+    }
+
+    // 'this' and 'super'
+    private void declareImplicit(String name) {
+        final Scope scope = scopes.peek();
+        final Variable variable = new Variable(scope.layout.allocate());
+        variable.defined = true;
+        scope.put(name, variable);
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
-        final int lastIdx = scopes.size() - 1;
-        for (int i = lastIdx; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, lastIdx - i);
-                return;
+    // innermost scope of the frame declaring the name, null if it is not a variable of that frame
+    private Scope lookUp(Layout layout, String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            final Scope scope = scopes.get(i);
+            if (scope.layout == layout && scope.containsKey(name)) {
+                return scope;
             }
         }
+        return null;
+    }
+
+    // slot in the current frame, -1 if the name is not declared by it
+    private int resolveLocal(String name) {
+        if (scopes.isEmpty()) return -1;
+        final Scope scope = lookUp(scopes.peek().layout, name);
+        return scope == null ? -1 : scope.get(name).slot;
+    }
+
+    // index among the upvalues of the current frame, -1 for globals
+    private int resolveUpvalue(String name) {
+        if (scopes.isEmpty()) return -1;
+        return resolveUpvalue(scopes.peek().layout, name);
+    }
+
+    private int resolveUpvalue(Layout layout, String name) {
+        if (layout.enclosing == null) return -1;
+
+        final Scope scope = lookUp(layout.enclosing, name);
+        if (scope != null) {
+            scope.captured = true;
+            return layout.capture(true, scope.get(name).slot);
+        }
+
+        final int upvalue = resolveUpvalue(layout.enclosing, name);
+        if (upvalue == -1) return -1;
+        return layout.capture(false, upvalue);
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         final FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
 
-        beginScope();
+        beginScope(true);
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            // the receiver takes the first slot of the method's own frame
+            declareImplicit("this");
+        }
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
-        endScope();
+        final Layout layout = endScope().layout;
+        function.frameSize = layout.size;
+        function.captures = layout.captures();
 
         currentFunction = enclosingFunction;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        beginScope();
+        stmt.inlined = !scopes.isEmpty();
+        beginScope(false);
         resolve(stmt.statements);
-        endScope();
+        final Scope scope = endScope();
+        stmt.frameSize = scope.layout.size;
+        stmt.firstSlot = scope.firstSlot;
+        stmt.closesUpvalues = scope.captured;
         return null;
     }
 
@@ -97,7 +162,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         final ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         if (stmt.superclass != null) {
@@ -108,21 +173,19 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
 
-            beginScope();
-            scopes.peek().put("super", true);
+            beginScope(true);
+            declareImplicit("super");
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
         for (Stmt.Function method : stmt.methods) {
             final FunctionType functionType = "init".equals(method.name.lexeme)
                     ? FunctionType.INITIALIZER
                     : FunctionType.METHOD;
             resolveFunction(method, functionType);
         }
-        endScope();
         if (stmt.superclass != null) {
-            endScope();
+            // 'super' gets a frame of its own, which the methods capture it from
+            stmt.captures = endScope().layout.captures();
         }
 
         currentClass = enclosingClass;
@@ -131,7 +194,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -141,25 +204,30 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        // get can return null
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            error(expr.name, "Can't read local variable in its own initializer.");
+        if (!scopes.isEmpty()) {
+            // get can return null
+            final Variable variable = scopes.peek().get(expr.name.lexeme);
+            if (variable != null && !variable.defined) {
+                error(expr.name, "Can't read local variable in its own initializer.");
+            }
         }
 
-        resolveLocal(expr, expr.name);
+        expr.local = resolveLocal(expr.name.lexeme);
+        if (expr.local == -1) expr.upvalue = resolveUpvalue(expr.name.lexeme);
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.local = resolveLocal(expr.name.lexeme);
+        if (expr.local == -1) expr.upvalue = resolveUpvalue(expr.name.lexeme);
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -200,6 +268,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             if (currentFunction == FunctionType.INITIALIZER) {
                 error(stmt.keyword, "Can't return a value from an initializer.");
             }
+            // parentheses around the call leave nothing more to do either, the Optimizer drops them later
+            Expr value = stmt.value;
+            while (value instanceof Expr.Grouping) {
+                value = ((Expr.Grouping) value).expression;
+            }
+            if (value instanceof Expr.Call && currentFunction != FunctionType.NONE) {
+                // nothing is left to do in the function once the call is made
+                ((Expr.Call) value).tail = true;
+            }
             resolve(stmt.value);
         }
         return null;
@@ -250,7 +327,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         } else if (currentClass != ClassType.SUBCLASS) {
             error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
-        resolveLocal(expr, expr.keyword);
+        expr.local = resolveLocal("super");
+        if (expr.local == -1) expr.upvalue = resolveUpvalue("super");
+        expr.thisLocal = resolveLocal("this");
+        if (expr.thisLocal == -1) expr.thisUpvalue = resolveUpvalue("this");
         return null;
     }
 
@@ -260,7 +340,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        expr.local = resolveLocal("this");
+        if (expr.local == -1) expr.upvalue = resolveUpvalue("this");
         return null;
     }
 
@@ -288,7 +369,61 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
-    private static class Scope extends HashMap<String, Boolean> {
+    private static class Scope extends HashMap<String, Variable> {
+        // the frame the variables of the scope live in, shared with the enclosing scope for blocks
+        final Layout layout;
+        final int firstSlot;
+        // some variable of the scope is used by a closure
+        boolean captured = false;
+
+        Scope(Layout layout) {
+            this.layout = layout;
+            this.firstSlot = layout.next;
+        }
+    }
+
+    // slots and upvalues of one runtime frame
+    private static class Layout {
+        // frame the closures of this one are created in, null under the global scope
+        final Layout enclosing;
+        private final List<Capture> captures = new ArrayList<>();
+        int next = 0;
+        int size = 0;
+
+        Layout(Layout enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        int allocate() {
+            final int slot = next++;
+            size = Math.max(size, next);
+            return slot;
+        }
+
+        // returns the index of the upvalue
+        int capture(boolean local, int index) {
+            for (int i = 0; i < captures.size(); i++) {
+                final Capture capture = captures.get(i);
+                if (capture.local == local && capture.index == index) {
+                    return i;
+                }
+            }
+            captures.add(new Capture(local, index));
+            return captures.size() - 1;
+        }
+
+        Capture[] captures() {
+            return captures.isEmpty() ? Capture.NONE : captures.toArray(new Capture[0]);
+        }
+    }
+
+    private static class Variable {
+        final int slot;
+        boolean defined = false;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
     }
 
     private enum ClassType {
@@ -0,0 +1,10 @@
+package io.github.rohitdm97.loximpl.core;
+
+class RuntimeError extends RuntimeException {
+    final Token token;
+
+    RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+}
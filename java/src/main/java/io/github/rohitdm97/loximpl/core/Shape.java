@@ -0,0 +1,82 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layout of the fields of a {@link LoxInstance}, also known as a hidden class
+ * <p>
+ * Instances start with the empty root shape of their {@link LoxClass}. Adding a field to an instance moves it
+ * along a transition to the shape having that field at the next slot, so instances of a class which gain fields
+ * in the same order share their shapes and keep the values in a plain array. Shapes never change once created,
+ * which makes them a cheap key for the {@link InlineCache} of property access sites.
+ * <p>
+ * A class declaration makes a new LoxClass every time it runs, in every run of a script. All of them share one
+ * root shape as long as their superclasses do, see {@link #root}, so caches keep hitting across those classes.
+ * That is why the root shape also numbers the methods, which are the same for all of them, and caches remember
+ * the number rather than the method of one class.
+ */
+final class Shape {
+
+    private final Map<String, Integer> slots;
+    // slots of the methods, the same for every shape grown from one root
+    private final Map<String, Integer> methods;
+    // shapes are shared by every instance of a class, transitions may be added from several threads
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    // root shape of classes having the given methods
+    Shape(Collection<String> methodNames) {
+        this.slots = Collections.emptyMap();
+        final Map<String, Integer> methods = new HashMap<>();
+        for (String name : methodNames) {
+            methods.put(name, methods.size());
+        }
+        this.methods = methods;
+    }
+
+    private Shape(Shape parent, String name) {
+        final Map<String, Integer> slots = new HashMap<>(parent.slots);
+        slots.put(name, parent.size());
+        this.slots = slots;
+        this.methods = parent.methods;
+    }
+
+    // the root shape shared by the classes of the declaration whose superclasses share theirs too
+    static Shape root(Stmt.Class declaration, LoxClass superClass, Collection<String> methodNames) {
+        final Object key = superClass == null ? declaration : superClass.getRootShape();
+        return declaration.shapes.computeIfAbsent(key, k -> new Shape(methodNames));
+    }
+
+    // -1 when the shape has no such field
+    int slotOf(String name) {
+        final Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    // -1 when the class has no such method
+    int methodOf(String name) {
+        final Integer slot = methods.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    int methodCount() {
+        return methods.size();
+    }
+
+    // the shape with name added as the last field
+    Shape with(String name) {
+        final Shape next = transitions.get(name);
+        if (next != null) {
+            return next;
+        }
+        return transitions.computeIfAbsent(name, key -> new Shape(this, key));
+    }
+
+}
@@ -0,0 +1,152 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the last {@link Engine#run} spent its time and memory, kept only when the JVM runs with -Dlox.stats=true
+ * <p>
+ * Every phase records its wall time and the bytes the running thread allocated during it. Fibers of a run count
+ * into the same counters from their own threads, which is why they are {@link LongAdder}s. The bytecode VM keeps
+ * variables on its stack and creates no environments, it reports -1 for them. Functions the JIT compiled count
+ * their calls but not the frames of blocks inside them.
+ */
+public class Stats {
+    // read once, so HotSpot folds the counting away when it is off
+    static final boolean ENABLED = Boolean.getBoolean("lox.stats");
+
+    private static final com.sun.management.ThreadMXBean THREADS = ENABLED ? threads() : null;
+
+    public enum Phase {
+        SCAN, PARSE, RESOLVE, OPTIMIZE, COMPILE, RUN
+    }
+
+    private final long[] wallNanos = new long[Phase.values().length];
+    private final long[] allocatedBytes = new long[Phase.values().length];
+
+    final LongAdder tokens = new LongAdder();
+    // all statements parsed, nested ones included
+    final LongAdder statements = new LongAdder();
+    // calls of Lox functions and methods, tail calls included
+    final LongAdder calls = new LongAdder();
+    final LongAdder instances = new LongAdder();
+    // frames the variables of functions and top level blocks live in
+    final LongAdder environments = new LongAdder();
+    // whether the backend has environments to count
+    private final boolean countsEnvironments;
+
+    // taken when the running phase began
+    private long startNanos;
+    private long startBytes;
+
+    Stats(boolean countsEnvironments) {
+        this.countsEnvironments = countsEnvironments;
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getInstances() {
+        return instances.sum();
+    }
+
+    // -1 when the backend has no environments
+    public long getEnvironments() {
+        return countsEnvironments ? environments.sum() : -1;
+    }
+
+    public long wallNanos(Phase phase) {
+        return wallNanos[phase.ordinal()];
+    }
+
+    // -1 when the JVM does not measure allocations
+    public long allocatedBytes(Phase phase) {
+        return allocatedBytes[phase.ordinal()];
+    }
+
+    void reset() {
+        for (Phase phase : Phase.values()) {
+            wallNanos[phase.ordinal()] = 0;
+            allocatedBytes[phase.ordinal()] = 0;
+        }
+        for (LongAdder counter : new LongAdder[]{tokens, statements, calls, instances, environments}) {
+            counter.reset();
+        }
+    }
+
+    void begin() {
+        startBytes = allocated();
+        startNanos = System.nanoTime();
+    }
+
+    void end(Phase phase) {
+        wallNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        final long bytes = allocated();
+        allocatedBytes[phase.ordinal()] = bytes < 0 ? -1 : allocatedBytes[phase.ordinal()] + bytes - startBytes;
+    }
+
+    static long count(List<? extends Stmt> statements) {
+        long count = 0;
+        for (Stmt statement : statements) {
+            count += count(statement);
+        }
+        return count;
+    }
+
+    private static long count(Stmt statement) {
+        if (statement instanceof Stmt.Block) {
+            return 1 + count(((Stmt.Block) statement).statements);
+        } else if (statement instanceof Stmt.Function) {
+            return 1 + count(((Stmt.Function) statement).body);
+        } else if (statement instanceof Stmt.Class) {
+            return 1 + count(((Stmt.Class) statement).methods);
+        } else if (statement instanceof Stmt.If) {
+            final Stmt.If stmt = (Stmt.If) statement;
+            return 1 + count(stmt.thenBranch) + (stmt.elseBranch == null ? 0 : count(stmt.elseBranch));
+        } else if (statement instanceof Stmt.While) {
+            return 1 + count(((Stmt.While) statement).body);
+        }
+        return 1;
+    }
+
+    private static long allocated() {
+        if (THREADS == null) return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return null;
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder out = new StringBuilder();
+        out.append(String.format("%-10s %12s %14s%n", "phase", "wall ms", "allocated KiB"));
+        for (Phase phase : Phase.values()) {
+            if (wallNanos(phase) == 0) continue;
+            final long bytes = allocatedBytes(phase);
+            out.append(String.format("%-10s %12.3f %14s%n", phase.name().toLowerCase(), wallNanos(phase) / 1e6,
+                    bytes < 0 ? "n/a" : String.valueOf(bytes / 1024)));
+        }
+        final long environments = getEnvironments();
+        out.append(String.format("tokens %d, statements %d, calls %d, instances %d, environments %s",
+                getTokens(), getStatements(), getCalls(), getInstances(),
+                environments < 0 ? "n/a" : String.valueOf(environments)));
+        return out.toString();
+    }
+
+}
@@ -1,6 +1,8 @@
 package io.github.rohitdm97.loximpl.core;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 abstract class Stmt {
     interface Visitor<R> {
@@ -25,6 +27,10 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+        boolean inlined = false;
+        int frameSize = 0;
+        int firstSlot = 0;
+        boolean closesUpvalues = false;
     }
     static class Class extends Stmt {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
@@ -41,6 +47,10 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+        int slot = 0;
+        Capture[] captures = Capture.NONE;
+        // root shapes of the classes made from this declaration, see Shape#root
+        final Map<Object, Shape> shapes = new ConcurrentHashMap<>();
     }
     static class Expression extends Stmt {
         Expression(Expr expression) {
@@ -69,6 +79,10 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = 0;
+        int frameSize = 0;
+        Capture[] captures = Capture.NONE;
+        JitProfile profile = new JitProfile();
     }
     static class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -125,6 +139,7 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        int slot = 0;
     }
     static class While extends Stmt {
         While(Expr condition, Stmt body) {
@@ -0,0 +1,30 @@
+package io.github.rohitdm97.loximpl.core;
+
+import java.util.List;
+
+/**
+ * A call in tail position waiting to be run by the {@link LoxFunction} it returns from
+ * <p>
+ * The interpreter evaluates the callee and arguments of such a call, fills in its single instance and
+ * completes with {@link Completion#TAIL_CALL}. The function being left then runs the callee in a loop instead of
+ * nesting another call, so tail recursion takes constant Java stack.
+ */
+class TailCall {
+    // value of a tail call expression, it never escapes the return statement holding the call
+    static final Object PENDING = new Object();
+
+    LoxFunction function;
+    // null unless the call is obj.method() or super.method()
+    LoxInstance receiver;
+    List<Object> arguments;
+
+    void set(LoxFunction function, LoxInstance receiver, List<Object> arguments) {
+        this.function = function;
+        this.receiver = receiver;
+        this.arguments = arguments;
+    }
+
+    void clear() {
+        set(null, null, null);
+    }
+}
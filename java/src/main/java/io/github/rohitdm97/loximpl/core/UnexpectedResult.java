@@ -0,0 +1,11 @@
+package io.github.rohitdm97.loximpl.core;
+
+// thrown by the primitive evaluation paths when the value turns out not to have the expected type
+class UnexpectedResult extends Exception {
+    final Object result;
+
+    UnexpectedResult(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
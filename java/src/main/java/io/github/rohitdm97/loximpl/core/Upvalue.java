@@ -0,0 +1,65 @@
+package io.github.rohitdm97.loximpl.core;
+
+/**
+ * A variable captured by a closure, it works the same way as the upvalues of clox
+ * <p>
+ * While the frame declaring the variable can still reach it, the upvalue is open and points into the slots of that
+ * frame. Once the variable goes out of scope the frame closes the upvalue, which moves the value into the upvalue
+ * itself and lets go of the frame. Closures only keep the upvalues of the variables they use.
+ * <p>
+ * Closures of fibers may read an upvalue while the thread of the frame closes it. The value is written before the
+ * volatile slots are cleared, so whoever sees the upvalue closed also sees the value moved into it.
+ */
+final class Upvalue {
+    static final Upvalue[] NONE = new Upvalue[0];
+
+    // slots of the declaring frame, null once closed
+    private volatile Object[] slots;
+    final int slot;
+    private Object value;
+    // next open upvalue of the same frame, on a lower slot
+    Upvalue next;
+    // reached by an environment snapshot, see Freezer
+    private boolean frozen = false;
+
+    Upvalue(Object[] slots, int slot, Upvalue next) {
+        this.slots = slots;
+        this.slot = slot;
+        this.next = next;
+    }
+
+    // closed and unfrozen, for an environment assigning a frozen variable
+    Upvalue copy() {
+        final Upvalue copy = new Upvalue(null, slot, null);
+        copy.value = get();
+        return copy;
+    }
+
+    Object get() {
+        final Object[] slots = this.slots;
+        return slots == null ? value : slots[slot];
+    }
+
+    void set(Object value) {
+        final Object[] slots = this.slots;
+        if (slots == null) {
+            this.value = value;
+        } else {
+            slots[slot] = value;
+        }
+    }
+
+    void close() {
+        value = slots[slot];
+        // published by the volatile write
+        slots = null;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    void freeze() {
+        frozen = true;
+    }
+}
@@ -0,0 +1,603 @@
+package io.github.rohitdm97.loximpl.core;
+
+import io.github.rohitdm97.loximpl.error.ErrorReport;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack based virtual machine running the output of the {@link Compiler}, modelled on c/vm.c
+ * <p>
+ * Semantics and error messages are kept identical to the {@link Interpreter}
+ */
+class VirtualMachine {
+    private static final int FRAMES_MAX = 16384;
+    // sentinel to store un-initialized variables, the same as in globals shared with an Environment
+    private static final Object UNINITIALIZED = Environment.UNINITIALIZED;
+
+    private final ErrorReport report;
+    private final Environment globals;
+    // null unless -Dlox.stats=true, read behind Stats.ENABLED only
+    private final Stats stats;
+    // where print writes, System.out when null
+    PrintStream out = null;
+
+    private Object[] stack = new Object[1024];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    // sorted by slot, highest first
+    private Obj.Upvalue openUpvalues;
+
+    VirtualMachine(ErrorReport report, Stats stats, Environment globals) {
+        this.report = report;
+        this.stats = stats;
+        this.globals = globals;
+        this.globals.define("clock", new Obj.Native(0, arguments -> (double) System.currentTimeMillis() / 1000d));
+        // defined so scripts using fibers fail at the call rather than on an undefined variable, see Fibers
+        this.globals.define("spawn", new Obj.Native(1, arguments -> {
+            throw new VmError("Fibers are not supported by the bytecode VM.");
+        }));
+        this.globals.define("join", new Obj.Native(1, arguments -> {
+            throw new VmError("Fibers are not supported by the bytecode VM.");
+        }));
+    }
+
+    void interpret(Obj.Function script) {
+        final Obj.Closure closure = new Obj.Closure(script);
+        push(closure);
+        call(closure, 0);
+        run();
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.pool;
+        Obj.Upvalue[] upvalues = frame.closure.upvalues;
+        int base = frame.base;
+        int ip = frame.ip;
+        int start = ip;
+
+        try {
+            for (;;) {
+                start = ip;
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT: {
+                        push(constants[readShort(code, ip)]);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.NIL: push(null); break;
+                    case OpCode.TRUE: push(Boolean.TRUE); break;
+                    case OpCode.FALSE: push(Boolean.FALSE); break;
+                    case OpCode.UNINITIALIZED: push(UNINITIALIZED); break;
+                    case OpCode.POP: pop(); break;
+
+                    case OpCode.GET_LOCAL: {
+                        push(stack[base + (code[ip++] & 0xff)]);
+                        break;
+                    }
+                    case OpCode.GET_LOCAL_CHECKED: {
+                        final Object value = stack[base + (code[ip++] & 0xff)];
+                        if (value == UNINITIALIZED) {
+                            throw new VmError(String.format("Uninitialized variable '%s'", constants[readShort(code, ip)]));
+                        }
+                        ip += 2;
+                        push(value);
+                        break;
+                    }
+                    case OpCode.SET_LOCAL: {
+                        stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.GET_GLOBAL: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Object value = globals.lookUp(name);
+                        if (value == Environment.UNDEFINED) {
+                            throw new VmError(String.format("Undefined variable '%s'", name));
+                        }
+                        if (value == UNINITIALIZED) {
+                            throw new VmError(String.format("Uninitialized variable '%s'", name));
+                        }
+                        push(value);
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        globals.define((String) constants[readShort(code, ip)], pop());
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        if (!globals.assign(name, stack[sp - 1])) {
+                            throw new VmError(String.format("Undefined variable '%s'", name));
+                        }
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        Obj.Upvalue upvalue = upvalues[code[ip++] & 0xff];
+                        if (upvalue.frozen) upvalue = globals.view(upvalue);
+                        push(upvalue.open ? stack[upvalue.slot] : upvalue.closed);
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE_CHECKED: {
+                        Obj.Upvalue upvalue = upvalues[code[ip++] & 0xff];
+                        if (upvalue.frozen) upvalue = globals.view(upvalue);
+                        final Object value = upvalue.open ? stack[upvalue.slot] : upvalue.closed;
+                        if (value == UNINITIALIZED) {
+                            throw new VmError(String.format("Uninitialized variable '%s'", constants[readShort(code, ip)]));
+                        }
+                        ip += 2;
+                        push(value);
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        Obj.Upvalue upvalue = upvalues[code[ip++] & 0xff];
+                        if (upvalue.frozen) upvalue = globals.own(upvalue, Obj.Upvalue::copy);
+                        if (upvalue.open) {
+                            stack[upvalue.slot] = stack[sp - 1];
+                        } else {
+                            upvalue.closed = stack[sp - 1];
+                        }
+                        break;
+                    }
+                    case OpCode.GET_PROPERTY: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Object receiver = stack[sp - 1];
+                        if (!(receiver instanceof Obj.Instance)) {
+                            throw new VmError("Only instances have properties.");
+                        }
+                        final Obj.Instance instance = (Obj.Instance) receiver;
+                        final Map<String, Object> fields = fieldsOf(instance);
+                        final Object value = fields.get(name);
+                        if (value != null || fields.containsKey(name)) {
+                            stack[sp - 1] = value;
+                            break;
+                        }
+                        stack[sp - 1] = bindMethod(instance, instance.klass, name);
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Object receiver = stack[sp - 2];
+                        if (!(receiver instanceof Obj.Instance)) {
+                            throw new VmError("Only instances have fields.");
+                        }
+                        Obj.Instance instance = (Obj.Instance) receiver;
+                        if (instance.frozen) instance = globals.own(instance, Obj.Instance::copy);
+                        final Object value = pop();
+                        instance.fields.put(name, value);
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Obj.Class superclass = (Obj.Class) pop();
+                        stack[sp - 1] = bindMethod(stack[sp - 1], superclass, name);
+                        break;
+                    }
+
+                    case OpCode.EQUAL: {
+                        final Object b = pop();
+                        stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        final Object b = pop();
+                        stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] > b;
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] >= b;
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] < b;
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] <= b;
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        final Object b = stack[sp - 1];
+                        final Object a = stack[sp - 2];
+                        if (a instanceof Double && b instanceof Double) {
+                            stack[sp - 2] = (double) a + (double) b;
+                        } else if (a instanceof String && b instanceof String) {
+                            stack[sp - 2] = (String) a + (String) b;
+                        } else {
+                            throw new VmError("Operands must be two numbers or two strings.");
+                        }
+                        sp--;
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] - b;
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] * b;
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        checkNumberOperands();
+                        final double b = (double) pop();
+                        stack[sp - 1] = (double) stack[sp - 1] / b;
+                        break;
+                    }
+                    case OpCode.NOT: {
+                        stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                        break;
+                    }
+                    case OpCode.NEGATE: {
+                        if (!(stack[sp - 1] instanceof Double)) {
+                            throw new VmError("Operand must be a number.");
+                        }
+                        stack[sp - 1] = -(double) stack[sp - 1];
+                        break;
+                    }
+
+                    case OpCode.PRINT: {
+                        (out != null ? out : System.out).println(Interpreter.stringify(pop()));
+                        break;
+                    }
+                    case OpCode.JUMP: {
+                        ip += 2 + readShort(code, ip);
+                        break;
+                    }
+                    case OpCode.JUMP_IF_FALSE: {
+                        if (Interpreter.isTruthy(stack[sp - 1])) {
+                            ip += 2;
+                        } else {
+                            ip += 2 + readShort(code, ip);
+                        }
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        ip += 2 - readShort(code, ip);
+                        break;
+                    }
+
+                    case OpCode.CALL:
+                    case OpCode.TAIL_CALL: {
+                        final int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        callValue(stack[sp - 1 - argCount], argCount);
+                        if (frames[frameCount - 1] != frame) {
+                            frame = code[start] == OpCode.TAIL_CALL ? replaceFrame(frame) : frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.pool;
+                            upvalues = frame.closure.upvalues;
+                            base = frame.base;
+                            ip = frame.ip;
+                        }
+                        break;
+                    }
+                    case OpCode.INVOKE:
+                    case OpCode.TAIL_INVOKE: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        final int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        invoke(name, argCount);
+                        if (frames[frameCount - 1] != frame) {
+                            frame = code[start] == OpCode.TAIL_INVOKE ? replaceFrame(frame) : frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.pool;
+                            upvalues = frame.closure.upvalues;
+                            base = frame.base;
+                            ip = frame.ip;
+                        }
+                        break;
+                    }
+                    case OpCode.SUPER_INVOKE:
+                    case OpCode.TAIL_SUPER_INVOKE: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        final int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        final Obj.Class superclass = (Obj.Class) pop();
+                        invokeFromClass(superclass, name, argCount);
+                        if (frames[frameCount - 1] != frame) {
+                            frame = code[start] == OpCode.TAIL_SUPER_INVOKE ? replaceFrame(frame) : frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.pool;
+                            upvalues = frame.closure.upvalues;
+                            base = frame.base;
+                            ip = frame.ip;
+                        }
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        final Obj.Function function = (Obj.Function) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Obj.Closure closure = new Obj.Closure(function);
+                        for (int i = 0; i < function.upvalueCount; i++) {
+                            final boolean isLocal = code[ip++] == 1;
+                            final int index = code[ip++] & 0xff;
+                            closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : upvalues[index];
+                        }
+                        push(closure);
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE: {
+                        closeUpvalues(sp - 1);
+                        sp--;
+                        break;
+                    }
+                    case OpCode.RETURN: {
+                        final Object result = pop();
+                        closeUpvalues(base);
+                        frameCount--;
+                        if (frameCount == 0) {
+                            // the script closure
+                            sp = 0;
+                            return;
+                        }
+                        Arrays.fill(stack, base, sp, null);
+                        sp = base;
+                        push(result);
+
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.pool;
+                        upvalues = frame.closure.upvalues;
+                        base = frame.base;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLASS: {
+                        push(new Obj.Class((String) constants[readShort(code, ip)]));
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.INHERIT: {
+                        final Object superclass = stack[sp - 2];
+                        if (!(superclass instanceof Obj.Class)) {
+                            throw new VmError("Superclass must be a class.");
+                        }
+                        final Obj.Class subclass = (Obj.Class) pop();
+                        // methods are copied down, classes can not change once declared
+                        subclass.methods.putAll(((Obj.Class) superclass).methods);
+                        subclass.initializer = ((Obj.Class) superclass).initializer;
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        final String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        final Obj.Closure method = (Obj.Closure) pop();
+                        final Obj.Class klass = (Obj.Class) stack[sp - 1];
+                        klass.methods.put(name, method);
+                        if ("init".equals(name)) {
+                            klass.initializer = method;
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException(String.format("Unknown opcode %d", code[start]));
+                }
+            }
+        } catch (VmError error) {
+            final int[] lines = frame.closure.function.chunk.lines;
+            report.error(error.getMessage(), lines[start + error.offset], "");
+            resetStack();
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private Object pop() {
+        final Object value = stack[--sp];
+        stack[sp] = null;
+        return value;
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, 0, sp, null);
+        sp = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private void checkNumberOperands() {
+        if (stack[sp - 1] instanceof Double && stack[sp - 2] instanceof Double) return;
+        throw new VmError("Operands must be numbers.");
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof Obj.Closure) {
+            call((Obj.Closure) callee, argCount);
+            return;
+        }
+        if (callee instanceof Obj.BoundMethod) {
+            final Obj.BoundMethod bound = (Obj.BoundMethod) callee;
+            stack[sp - 1 - argCount] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+        if (callee instanceof Obj.Class) {
+            final Obj.Class klass = (Obj.Class) callee;
+            stack[sp - 1 - argCount] = new Obj.Instance(klass);
+            if (Stats.ENABLED) stats.instances.increment();
+            if (klass.initializer != null) {
+                call(klass.initializer, argCount);
+            } else if (argCount != 0) {
+                throw new VmError(String.format("Expected %d arguments but got %d.", 0, argCount));
+            }
+            return;
+        }
+        if (callee instanceof Obj.Native) {
+            final Obj.Native function = (Obj.Native) callee;
+            if (argCount != function.arity) {
+                throw new VmError(String.format("Expected %d arguments but got %d.", function.arity, argCount));
+            }
+            final List<Object> arguments = new ArrayList<>(Arrays.asList(stack).subList(sp - argCount, sp));
+            final Object result = function.body.call(arguments);
+            Arrays.fill(stack, sp - argCount - 1, sp, null);
+            sp -= argCount + 1;
+            push(result);
+            return;
+        }
+        throw new VmError("Can only call functions and classes.");
+    }
+
+    private void call(Obj.Closure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw new VmError(String.format("Expected %d arguments but got %d.", closure.function.arity, argCount));
+        }
+        if (frameCount == FRAMES_MAX) {
+            throw new VmError("Stack overflow.");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = frames[frameCount] = new CallFrame();
+        }
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+        // the script itself is not counted as a call
+        if (Stats.ENABLED && frameCount > 0) stats.calls.increment();
+        frameCount++;
+    }
+
+    // the frame the last call pushed replaces the frame of its caller, so tail recursion runs in constant stack
+    private CallFrame replaceFrame(CallFrame caller) {
+        final CallFrame callee = frames[frameCount - 1];
+        closeUpvalues(caller.base);
+        final int size = sp - callee.base;
+        System.arraycopy(stack, callee.base, stack, caller.base, size);
+        Arrays.fill(stack, caller.base + size, sp, null);
+        sp = caller.base + size;
+        caller.closure = callee.closure;
+        caller.ip = callee.ip;
+        frameCount--;
+        return caller;
+    }
+
+    private void invoke(String name, int argCount) {
+        final Object receiver = stack[sp - 1 - argCount];
+        if (!(receiver instanceof Obj.Instance)) {
+            throw new VmError("Only instances have properties.", 1);
+        }
+        final Obj.Instance instance = (Obj.Instance) receiver;
+        final Map<String, Object> fields = fieldsOf(instance);
+        final Object value = fields.get(name);
+        if (value != null || fields.containsKey(name)) {
+            stack[sp - 1 - argCount] = value;
+            callValue(value, argCount);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private void invokeFromClass(Obj.Class klass, String name, int argCount) {
+        final Obj.Closure method = klass.methods.get(name);
+        if (method == null) {
+            throw new VmError(String.format("Undefined property '%s'.", name), 1);
+        }
+        call(method, argCount);
+    }
+
+    // of the copy the globals made when the instance is frozen, it stays the receiver of its methods
+    private Map<String, Object> fieldsOf(Obj.Instance instance) {
+        return instance.frozen ? globals.view(instance).fields : instance.fields;
+    }
+
+    private Obj.BoundMethod bindMethod(Object receiver, Obj.Class klass, String name) {
+        final Obj.Closure method = klass.methods.get(name);
+        if (method == null) {
+            throw new VmError(String.format("Undefined property '%s'.", name));
+        }
+        return new Obj.BoundMethod(receiver, method);
+    }
+
+    private Obj.Upvalue captureUpvalue(int slot) {
+        Obj.Upvalue previous = null;
+        Obj.Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+
+        final Obj.Upvalue created = new Obj.Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            final Obj.Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.open = false;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private static class CallFrame {
+        Obj.Closure closure;
+        int ip;
+        // first stack slot of the frame, holds the callee or the receiver
+        int base;
+    }
+
+    private static class VmError extends RuntimeException {
+        // which byte of the instruction carries the line to report, see Compiler.emitInvoke
+        final int offset;
+
+        VmError(String message) {
+            this(message, 0);
+        }
+
+        VmError(String message, int offset) {
+            super(message, null, false, false);
+            this.offset = offset;
+        }
+    }
+
+}
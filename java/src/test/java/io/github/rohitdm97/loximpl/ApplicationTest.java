@@ -0,0 +1,75 @@
+package io.github.rohitdm97.loximpl;
+
+import io.github.rohitdm97.loximpl.core.Engine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplicationTest {
+
+    private static Application parsed(String... args) {
+        final Application application = new Application();
+        assertTrue(application.parse(args), Arrays.toString(args));
+        return application;
+    }
+
+    @Test
+    void flagsComeInAnyOrder() {
+        for (String[] args : new String[][]{
+                {"--jit", "--stats", "a.lox"}, {"--stats", "--jit", "a.lox"}, {"a.lox", "--stats", "--jit"}}) {
+            final Application application = parsed(args);
+            assertEquals(Engine.Backend.TIERED, application.backend);
+            assertTrue(application.stats);
+            assertEquals("a.lox", application.script);
+        }
+        assertEquals(Engine.Backend.BYTECODE, parsed("--stats", "--vm").backend);
+        assertNull(parsed("--vm").script);
+        assertFalse(parsed("a.lox").stats);
+        assertEquals(Engine.Backend.TREE_WALKER, parsed().backend);
+    }
+
+    @Test
+    void badArgumentsAreRejected() {
+        for (String[] args : new String[][]{{"a.lox", "b.lox"}, {"--vm", "--jit"}, {"--fast", "a.lox"}}) {
+            assertFalse(new Application().parse(args), Arrays.toString(args));
+        }
+    }
+
+    // statistics are read once per JVM, so they are taken from a JVM of their own
+    private static String stats(Path script, String... flags) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), Application.class.getName(), script.toString()));
+        command.addAll(Arrays.asList(flags));
+        final Process process = new ProcessBuilder(command).start();
+        final String err = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return err.substring(err.lastIndexOf("tokens")).trim();
+    }
+
+    @Test
+    void statsCountTheWorkOfEveryBackend(@TempDir Path directory) throws IOException, InterruptedException {
+        final Path script = Files.writeString(directory.resolve("counted.lox"), String.join("\n",
+                "class A { init() { this.x = 1; } }",
+                "fun f(n) { if (n > 0) return f(n - 1); return A(); }",
+                "f(2); f(1);"));
+        final String counts = "tokens 52, statements 9, calls 7, instances 2, environments ";
+        assertEquals(counts + "7", stats(script, "--stats"));
+        assertEquals(counts + "7", stats(script, "--jit", "--stats"));
+        assertEquals(counts + "n/a", stats(script, "--stats", "--vm"));
+    }
+
+}
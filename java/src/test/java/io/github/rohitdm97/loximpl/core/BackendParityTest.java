@@ -0,0 +1,76 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// every backend runs the same scripts to the same output
+class BackendParityTest {
+    private static final String[][] CORPUS = {
+            {"arithmetic", "print 1 + 2 * 3 - 4 / 2; print -(3 - 5); print 7 / 2;", "5\n2\n3.5"},
+            {"strings", "var a = \"lo\"; print \"l\" + \"ox\"; print a + a == \"lolo\";", "lox\ntrue"},
+            {"truthiness", "print !nil; print !0; print nil or \"x\"; print false and 1;", "true\nfalse\nx\nfalse"},
+            {"scopes", "var a = 1; { var a = 2; { var a = 3; print a; } print a; } print a;", "3\n2\n1"},
+            {"loops", "var s = 0; for (var i = 0; i < 5; i = i + 1) { var j = i; while (j > 0) { s = s + j; j = j - 1; } } print s;",
+                    "20"},
+            {"recursion", "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); } print fib(15);", "610"},
+            {"closures", String.join("\n",
+                    "fun counter() { var count = 0; fun next() { count = count + 1; return count; } return next; }",
+                    "var a = counter(); var b = counter();",
+                    "a(); a(); b();",
+                    "print a(); print b();"), "3\n2"},
+            {"closures over loop variables", String.join("\n",
+                    "var fs = nil;",
+                    "for (var i = 0; i < 3; i = i + 1) { var j = i; fun f() { return j; } if (i == 1) fs = f; }",
+                    "print fs();"), "1"},
+            {"classes", String.join("\n",
+                    "class A { init(x) { this.x = x; } get() { return this.x; } }",
+                    "class B < A { init(x) { super.init(x * 2); } get() { return super.get() + 1; } }",
+                    "print B(3).get(); var m = A(5).get; print m();"), "7\n5"},
+            {"fields holding functions", String.join("\n",
+                    "class A { m() { return \"method\"; } }",
+                    "fun f() { return \"field\"; }",
+                    "var a = A(); print a.m(); a.m = f; print a.m();"), "method\nfield"},
+            {"tail recursion", String.join("\n",
+                    "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }",
+                    "print count(100000, 0);"), "100000"},
+            {"tail recursion in parentheses", String.join("\n",
+                    "fun count(n) { if (n == 0) return \"done\"; return (count(n - 1)); }",
+                    "print count(100000);"), "done"},
+            {"mutual tail recursion", String.join("\n",
+                    "fun even(n) { if (n == 0) return true; return odd(n - 1); }",
+                    "fun odd(n) { if (n == 0) return false; return even(n - 1); }",
+                    "print even(100001);"), "false"},
+            {"tail recursive methods", String.join("\n",
+                    "class Counter { down(n) { if (n == 0) return this; return this.down(n - 1); } }",
+                    "class Sub < Counter { down(n) { if (n == 0) return \"sub\"; return super.down(n); } }",
+                    "print Counter().down(100000) != nil; print Sub().down(3);"), "true\nsub"},
+            {"tail calls closing over their frame", String.join("\n",
+                    "var captured = nil;",
+                    "fun id(f) { return f; }",
+                    "fun make(n) { fun get() { return n; } return id(get); }",
+                    "captured = make(42); print captured();"), "42"},
+    };
+
+    static List<Arguments> cases() {
+        final List<Arguments> cases = new ArrayList<>();
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            for (String[] entry : CORPUS) {
+                cases.add(Arguments.of(backend, entry[0], entry[1], entry[2]));
+            }
+        }
+        return cases;
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("cases")
+    void backendsAgree(Engine.Backend backend, String name, String source, String expected) {
+        assertEquals(expected, Scripts.run(backend, source));
+    }
+
+}
@@ -0,0 +1,69 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryNodeTest {
+    private static final String ADD = "fun add(a, b) { return a + b; }\n";
+
+    private static Expr.Binary sum(CompiledScript script) {
+        final Stmt.Function add = (Stmt.Function) script.statements.get(0);
+        return (Expr.Binary) ((Stmt.Return) add.body.get(0)).value;
+    }
+
+    @Test
+    void nodesStayUninitializedUntilExecuted() {
+        final CompiledScript script = new Engine().compile(ADD);
+        assertSame(BinaryNode.UNINITIALIZED, sum(script).node);
+    }
+
+    @Test
+    void numbersSpecializeTheNode() {
+        final Engine engine = new Engine();
+        final CompiledScript script = engine.compile(ADD + "print add(1, 2); print add(3, 4);");
+        assertEquals("3\n7", Scripts.run(engine, script));
+        assertTrue(sum(script).node.speculatesNumbers());
+    }
+
+    @Test
+    void stringsAfterNumbersGeneralizeTheNode() {
+        final Engine engine = new Engine();
+        final CompiledScript script = engine.compile(ADD + "print add(1, 2); print add(\"a\", \"b\"); print add(3, 4);");
+        assertEquals("3\nab\n7", Scripts.run(engine, script));
+        assertFalse(engine.hadError());
+        assertFalse(sum(script).node.speculatesNumbers());
+    }
+
+    @Test
+    void numbersAfterStringsGeneralizeTheNode() {
+        final Engine engine = new Engine();
+        final CompiledScript script = engine.compile(ADD + "print add(\"a\", \"b\"); print add(1, 2);");
+        assertEquals("ab\n3", Scripts.run(engine, script));
+        assertFalse(engine.hadError());
+    }
+
+    @Test
+    void specializedNodesStillReportMixedOperands() {
+        final Engine engine = new Engine();
+        final CompiledScript script = engine.compile(ADD + "print add(1, 2); print add(1, \"a\");");
+        assertEquals("3", Scripts.run(engine, script));
+        assertTrue(engine.hadError());
+    }
+
+    @Test
+    void nestedArithmeticFallsBackWhenAnOperandIsNotANumber() {
+        final Engine engine = new Engine();
+        final CompiledScript script = engine.compile(String.join("\n",
+                "fun f(a, b, c) { return a + b + c; }",
+                "print f(2, 3, 4);",
+                "print f(\"a\", \"b\", \"c\");",
+                "print f(1, 1, 1);"));
+        assertEquals("9\nabc\n3", Scripts.run(engine, script));
+        assertFalse(engine.hadError());
+    }
+
+}
@@ -0,0 +1,85 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledScriptTest {
+    private static final String SOURCE = String.join("\n",
+            "class Point {",
+            "  init(x, y) { this.x = x; this.y = y; }",
+            "  sum() { return this.x + this.y; }",
+            "}",
+            "class Point3 < Point {",
+            "  init(x, y, z) { super.init(x, y); this.z = z; }",
+            "  sum() { return super.sum() + this.z; }",
+            "}",
+            "var total = 0;",
+            "for (var i = 0; i < 100; i = i + 1) {",
+            "  var p = Point3(i, 1, 2);",
+            "  p.x = p.x + 1;",
+            "  total = total + p.sum() + p.y;",
+            "}",
+            "print total;",
+            "");
+
+    @Test
+    void propertySitesStayMonomorphicAcrossRuns() {
+        for (Engine.Backend backend : List.of(Engine.Backend.TREE_WALKER, Engine.Backend.TIERED)) {
+            final CompiledScript script = new Engine(backend).compile(SOURCE);
+            for (int run = 0; run < 10; run++) {
+                assertEquals("5450", Scripts.output(script::run), backend + " run " + run);
+            }
+
+            final List<InlineCache> caches = new ArrayList<>();
+            caches(script.statements, caches);
+            assertFalse(caches.isEmpty());
+            for (InlineCache cache : caches) {
+                assertTrue(cache.isMonomorphic(), backend + " site went polymorphic");
+            }
+        }
+    }
+
+    @Test
+    void classesOfOneDeclarationShareTheirRootShape() {
+        final CompiledScript script = new Engine().compile("class A {} class B < A {} var a = A(); var b = B();");
+        final Environment first = Environment.createGlobal();
+        final Environment second = Environment.createGlobal();
+        script.run(first);
+        script.run(second);
+
+        final LoxClass a = (LoxClass) first.get("A");
+        final LoxClass otherA = (LoxClass) second.get("A");
+        assertTrue(a != otherA);
+        assertTrue(a.getRootShape() == otherA.getRootShape());
+        assertTrue(((LoxClass) first.get("B")).getRootShape() == ((LoxClass) second.get("B")).getRootShape());
+        assertTrue(a.getRootShape() != ((LoxClass) first.get("B")).getRootShape());
+    }
+
+    // property sites of the script, found through the fields of the AST nodes
+    private static void caches(Object node, List<InlineCache> caches) {
+        if (node instanceof InlineCache) {
+            caches.add((InlineCache) node);
+        } else if (node instanceof List) {
+            for (Object element : (List<?>) node) {
+                caches(element, caches);
+            }
+        } else if (node instanceof Stmt || node instanceof Expr) {
+            for (Field field : node.getClass().getDeclaredFields()) {
+                field.setAccessible(true);
+                try {
+                    caches(field.get(node), caches);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+}
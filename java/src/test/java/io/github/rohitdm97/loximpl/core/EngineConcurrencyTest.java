@@ -0,0 +1,88 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// engines on separate threads running one compiled script at the same time
+class EngineConcurrencyTest {
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int RUNS = 50;
+    // id is a global each engine gets from its thread, count one the script keeps across runs on an engine
+    private static final String SOURCE = String.join("\n",
+            "class Counter {",
+            "  init(start) { this.value = start; }",
+            "  add(n) { this.value = this.value + n; return this; }",
+            "}",
+            "fun sum(n) {",
+            "  var counter = Counter(0);",
+            "  for (var i = 0; i < n; i = i + 1) counter.add(id);",
+            "  return counter.value;",
+            "}",
+            "count = count + 1;",
+            "print sum(100);",
+            "print count;",
+            "");
+
+    @Test
+    void treeWalker() throws Exception {
+        runConcurrently(Engine.Backend.TREE_WALKER);
+    }
+
+    @Test
+    void tiered() throws Exception {
+        runConcurrently(Engine.Backend.TIERED);
+    }
+
+    @Test
+    void bytecode() throws Exception {
+        runConcurrently(Engine.Backend.BYTECODE);
+    }
+
+    private void runConcurrently(Engine.Backend backend) throws Exception {
+        final CompiledScript script = new Engine(backend).compile(SOURCE);
+        assertNotNull(script);
+
+        final CountDownLatch start = new CountDownLatch(THREADS);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> threads = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int id = thread + 1;
+                threads.add(executor.submit(() -> {
+                    final Environment globals = Environment.createGlobal();
+                    globals.define("id", (double) id);
+                    globals.define("count", 0.0);
+                    final Engine engine = new Engine(backend, globals);
+
+                    start.countDown();
+                    start.await();
+                    for (int run = 1; run <= RUNS; run++) {
+                        final String output = Scripts.run(engine, script);
+                        assertFalse(engine.hadError());
+                        // a run sees only the globals of its own engine
+                        assertEquals((100 * id) + "\n" + run, output,
+                                backend + " thread " + id + " run " + run);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> thread : threads) {
+                thread.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnginePoolTest {
+    private static final String BASELINE = String.join("\n",
+            "class Box {",
+            "  init(value) { this.value = value; }",
+            "  set(value) { this.value = value; }",
+            "}",
+            "var shared = Box(1);",
+            "fun counter() {",
+            "  var count = 0;",
+            "  fun next() { count = count + 1; return count; }",
+            "  return next;",
+            "}",
+            "var next = counter();",
+            "");
+
+    @ParameterizedTest
+    @EnumSource(Engine.Backend.class)
+    void bindingsAreRestoredOnRelease(Engine.Backend backend) throws InterruptedException {
+        final EnginePool pool = new EnginePool(backend, 1, BASELINE);
+        assertEquals("2", run(pool, "shared = Box(2); var mine = 3; print shared.value;"));
+        assertEquals("1", run(pool, "print shared.value;"));
+        assertError(pool, "print mine;");
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.Backend.class)
+    void changesToValuesOfTheBaselineStayWithTheBorrower(Engine.Backend backend) throws InterruptedException {
+        final EnginePool pool = new EnginePool(backend, 2, BASELINE);
+        final Engine engine = pool.borrow();
+        assertEquals("2\n3\n1\ntrue", Scripts.run(engine,
+                "var same = shared; shared.value = 2; print same.value; shared.set(3); print shared.value; print next(); print same == shared;"));
+        assertEquals("1\n1", run(pool, "print shared.value; print next();"));
+        assertEquals("3\n2", Scripts.run(engine, "print shared.value; print next();"));
+        pool.release(engine);
+
+        assertEquals("1\n1", run(pool, "print shared.value; print next();"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.Backend.class)
+    void valuesMadeFromTheBaselineCanChange(Engine.Backend backend) throws InterruptedException {
+        final EnginePool pool = new EnginePool(backend, 1, BASELINE);
+        assertEquals("3\n2", run(pool, "var box = Box(1); box.set(3); print box.value; var mine = counter(); mine(); print mine();"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Engine.Backend.class, names = "TIERED")
+    void compiledCodeCopiesValuesOfTheBaseline(Engine.Backend backend) throws InterruptedException {
+        final String threshold = System.getProperty("lox.jit.threshold");
+        System.setProperty("lox.jit.threshold", "1");
+        try {
+            final EnginePool pool = new EnginePool(backend, 1, BASELINE);
+            assertEquals("2\n1\n2", run(pool, "shared.set(2); print shared.value; print next(); print next();"));
+            assertEquals("1\n1", run(pool, "print shared.value; print next();"));
+        } finally {
+            if (threshold == null) {
+                System.clearProperty("lox.jit.threshold");
+            } else {
+                System.setProperty("lox.jit.threshold", threshold);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.Backend.class)
+    void warmUpPrintsNothing(Engine.Backend backend) throws InterruptedException {
+        final EnginePool pool = new EnginePool(backend, 2, BASELINE);
+        final CompiledScript script = new Engine(backend).compile("print shared.value;");
+        assertEquals("", Scripts.output(() -> pool.warmUp(script, 3)));
+        assertEquals("1", run(pool, "print shared.value;"));
+    }
+
+    private static String run(EnginePool pool, String source) throws InterruptedException {
+        final Engine engine = pool.borrow();
+        try {
+            final String output = Scripts.run(engine, source);
+            assertFalse(engine.hadError(), source);
+            return output;
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+    private static void assertError(EnginePool pool, String source) throws InterruptedException {
+        final Engine engine = pool.borrow();
+        try {
+            engine.run(source);
+            assertTrue(engine.hadError(), source);
+        } finally {
+            pool.release(engine);
+        }
+    }
+
+}
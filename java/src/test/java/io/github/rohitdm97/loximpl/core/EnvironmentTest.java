@@ -0,0 +1,79 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EnvironmentTest {
+    private static final String LIBRARY = String.join("\n",
+            "class Box { init(value) { this.value = value; } }",
+            "var box = Box(1);",
+            "var n = 1;",
+            "fun counter() {",
+            "  var count = 0;",
+            "  fun next() { count = count + 1; return count; }",
+            "  return next;",
+            "}",
+            "var next = counter();",
+            "");
+
+    @Test
+    void forksIsolateBindings() {
+        final Environment.Snapshot snapshot = library();
+        final Environment first = Environment.fork(snapshot);
+        final Environment second = Environment.fork(snapshot);
+
+        run(first, "n = 2; var extra = 3; box = Box(5);");
+        assertEquals("1\n1", run(second, "print n; print box.value;"));
+        assertFalse(second.isDefined("extra"));
+        assertEquals("2\n3\n5", run(first, "print n; print extra; print box.value;"));
+
+        first.restore(snapshot);
+        assertEquals("1\n1", run(first, "print n; print box.value;"));
+    }
+
+    @Test
+    void eachForkKeepsItsOwnMutations() {
+        final Environment.Snapshot snapshot = library();
+        final Environment first = Environment.fork(snapshot);
+        final Environment second = Environment.fork(snapshot);
+        // the values stay the same objects, only what a fork writes to them is copied
+        assertSame(first.get("box"), second.get("box"));
+
+        assertEquals("2\n1\ntrue", run(first, "var same = box; box.value = 2; print same.value; print next(); print same == box;"));
+        assertEquals("1\n1", run(second, "print box.value; print next();"));
+        assertEquals("2\n2", run(first, "print box.value; print next();"));
+
+        first.restore(snapshot);
+        assertEquals("1\n1", run(first, "print box.value; print next();"));
+    }
+
+    @Test
+    void snapshotsTakeTheCopiesAlong() {
+        final Environment first = Environment.fork(library());
+        run(first, "box.value = 2; next();");
+        final Environment.Snapshot changed = first.snapshot();
+
+        final Environment fork = Environment.fork(changed);
+        assertEquals("2\n2", run(fork, "print box.value; print next();"));
+        assertEquals("2\n2", run(first, "print box.value; print next();"));
+        assertEquals("3\n3", run(first, "box.value = 3; print box.value; print next();"));
+        assertEquals("2\n2", run(Environment.fork(changed), "print box.value; print next();"));
+    }
+
+    private static Environment.Snapshot library() {
+        final Environment globals = Environment.createGlobal();
+        new Engine(Engine.Backend.TREE_WALKER, globals).run(LIBRARY);
+        return globals.snapshot();
+    }
+
+    private static String run(Environment globals, String source) {
+        final Engine engine = new Engine(Engine.Backend.TREE_WALKER, globals);
+        final String output = Scripts.run(engine, source);
+        assertFalse(engine.hadError(), source);
+        return output;
+    }
+
+}
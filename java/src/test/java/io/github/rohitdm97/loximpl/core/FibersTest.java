@@ -0,0 +1,50 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FibersTest {
+    private static final String SOURCE = String.join("\n",
+            "fun work() { var sum = 0; for (var i = 1; i <= 10; i = i + 1) sum = sum + i; return sum; }",
+            "var a = spawn(work);",
+            "var b = spawn(work);",
+            "print join(a) + join(b);",
+            "");
+
+    @Test
+    void treeWalkerRunsFibers() {
+        assertEquals("110", Scripts.run(Engine.Backend.TREE_WALKER, SOURCE));
+    }
+
+    @Test
+    void bytecodeReportsFibersAsUnsupported() {
+        final Engine engine = new Engine(Engine.Backend.BYTECODE);
+        assertEquals("<native fn>\n<native fn>", Scripts.run(engine, "print spawn; print join;"));
+        assertFalse(engine.hadError());
+
+        engine.run(SOURCE);
+        assertTrue(engine.hadError());
+    }
+
+    @Test
+    void errorsOfFibersNobodyJoinedAreReported() {
+        final Engine engine = new Engine(Engine.Backend.TREE_WALKER);
+        assertEquals("done", Scripts.run(engine, "fun fail() { return nil + 1; } spawn(fail); print \"done\";"));
+        assertTrue(engine.hadError());
+    }
+
+    @Test
+    void otherFailuresOfFibersNobodyJoinedEndTheRun() {
+        final Engine engine = new Engine(Engine.Backend.TREE_WALKER);
+        assertThrows(StackOverflowError.class, () -> Scripts.run(engine, String.join("\n",
+                "fun deep() { return 1 + deep(); }",
+                "fun fail() { return nil + 1; }",
+                "spawn(deep); spawn(fail);")));
+        assertTrue(engine.hadError());
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InlineCacheTest {
+
+    // an instance of a class of its own, with the given fields set in order
+    private static LoxInstance instance(String... fields) {
+        final LoxInstance instance = new LoxInstance(new LoxClass("C", null, Collections.emptyMap()));
+        for (String field : fields) {
+            instance.setField(field, field);
+        }
+        return instance;
+    }
+
+    @Test
+    void instancesOfOneShapeHitTheSameEntry() {
+        final InlineCache cache = new InlineCache.Get();
+        final LoxInstance first = instance("x", "y");
+        final LoxInstance second = new LoxInstance(first.getKlass());
+        second.setField("x", 1.0);
+        second.setField("y", 2.0);
+
+        final InlineCache.Entry entry = cache.lookup(first, "y");
+        assertEquals(1, entry.slot);
+        assertSame(entry, cache.lookup(second, "y"));
+        assertTrue(cache.isMonomorphic());
+    }
+
+    @Test
+    void sitesStopCachingBeyondTheirEntries() {
+        final InlineCache cache = new InlineCache.Get();
+        for (int i = 0; i < 4; i++) {
+            final LoxInstance instance = i == 0 ? instance("x") : instance("a" + i, "x");
+            assertEquals(i == 0 ? 0 : 1, cache.lookup(instance, "x").slot);
+            assertSame(cache.lookup(instance, "x"), cache.lookup(instance, "x"));
+        }
+        assertFalse(cache.isMonomorphic());
+
+        final LoxInstance megamorphic = instance("a", "b", "x");
+        assertEquals(2, cache.lookup(megamorphic, "x").slot);
+        assertNotSame(cache.lookup(megamorphic, "x"), cache.lookup(megamorphic, "x"));
+    }
+
+    @Test
+    void missingFieldsResolveToMethodsOrNothing() {
+        final InlineCache.Entry entry = new InlineCache.Get().lookup(instance("x"), "y");
+        assertEquals(-1, entry.slot);
+        assertEquals(-1, entry.method);
+    }
+
+    @Test
+    void writesOfNewFieldsTransitionTheShape() {
+        final LoxInstance instance = instance("x");
+        final InlineCache.Entry entry = new InlineCache.Set().lookup(instance, "y");
+        assertEquals(1, entry.slot);
+        assertSame(instance.getShape().with("y"), entry.transition);
+
+        final InlineCache.Entry existing = new InlineCache.Set().lookup(instance, "x");
+        assertEquals(0, existing.slot);
+        assertSame(instance.getShape(), existing.transition);
+    }
+
+    @Test
+    void polymorphicSitesDispatchToTheMethodOfEachClass() {
+        final StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            source.append(String.format("class C%d { name() { return %d; } }%n", i, i));
+        }
+        source.append("class F { init() { this.name = C5().name; } }\n");
+        source.append("fun name(o) { return o.name(); }\n");
+        final StringBuilder expected = new StringBuilder();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 6; i++) {
+                source.append(String.format("print name(C%d());%n", i));
+                expected.append(i).append('\n');
+            }
+            source.append("print name(F());\n");
+            expected.append("5\n");
+        }
+
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals(expected.toString().trim(), Scripts.run(backend, source.toString()), backend.name());
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// method calls run on the receiver without binding the method first, they must behave as if they did
+class InvokeTest {
+    private static final String BOX = String.join("\n",
+            "class Box {",
+            "  init(value) { this.value = value; }",
+            "  get() { return this.value; }",
+            "  getter() { fun get() { return this.value; } return get; }",
+            "}",
+            "fun free() { return \"free\"; }",
+            "var a = Box(\"a\"); var b = Box(\"b\");",
+            "");
+
+    private static void assertOutput(String expected, String source) {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals(expected, Scripts.run(backend, BOX + source), backend.name());
+        }
+    }
+
+    @Test
+    void methodsRunOnTheReceiver() {
+        assertOutput("a\nb", "print a.get(); print b.get();");
+    }
+
+    @Test
+    void methodsReadLaterKeepTheirReceiver() {
+        assertOutput("a\na", "var get = a.get; print get(); print a.getter()();");
+    }
+
+    @Test
+    void fieldsHoldingFunctionsShadowMethods() {
+        assertOutput("free\na", "a.get = free; print a.get(); print Box(\"a\").get();");
+    }
+
+    @Test
+    void fieldsHoldingMethodsCallThemOnTheirOwnReceiver() {
+        assertOutput("b\nb", "a.get = b.get; print a.get(); a.other = b.getter(); print a.other();");
+    }
+
+    @Test
+    void fieldsHoldingClassesConstructInstances() {
+        assertOutput("c", "a.make = Box; print a.make(\"c\").get();");
+    }
+
+    @Test
+    void invokingWhatIsNotCallableIsAnError() {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            for (String source : new String[]{"a.value();", "a.missing();", "var n = 1; n.get();"}) {
+                final Engine engine = new Engine(backend);
+                Scripts.run(engine, BOX + source);
+                assertTrue(engine.hadError(), backend + " " + source);
+            }
+        }
+    }
+
+}
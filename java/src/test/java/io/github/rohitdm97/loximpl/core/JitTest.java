@@ -0,0 +1,91 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JitTest {
+
+    // the body compiles to far more than the 64KB of bytecode a JVM method may have
+    private static String largeFunction() {
+        final StringBuilder source = new StringBuilder("fun large() {\n  var x = 0;\n");
+        for (int i = 0; i < 6000; i++) {
+            source.append("  x = x - 2;\n");
+        }
+        source.append("  return x;\n}\n");
+        source.append("var result;\nfor (var i = 0; i < 1500; i = i + 1) result = large();\nprint result;\n");
+        return source.toString();
+    }
+
+    @Test
+    void functionTooLargeToCompileKeepsRunningInTheInterpreter() {
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        final CompiledScript script = engine.compile(largeFunction());
+        assertEquals("-12000", Scripts.run(engine, script));
+        assertFalse(engine.hadError());
+        assertTrue(((Stmt.Function) script.statements.get(0)).profile.rejected);
+    }
+
+    @Test
+    void functionTooLargeToCompileAheadOfTimeIsReported() {
+        final AotCompiler compiler = new AotCompiler("large");
+        assertNull(compiler.compile(largeFunction()));
+        assertEquals("<fn large>: code too large, a JVM method holds at most 64KB of bytecode", compiler.getUnsupported());
+
+        final AotCompiler small = new AotCompiler("small");
+        assertNotNull(small.compile("fun small() { return 1; } print small();"));
+        assertNull(small.getUnsupported());
+    }
+
+    // runs f often enough for the Jit to compile it, then the rest of the script
+    private static String hot(String function, String warmUp, String rest) {
+        return function + "\nfor (var i = 0; i < 1100; i = i + 1) " + warmUp + "\n" + rest;
+    }
+
+    @Test
+    void nestedArithmeticComputesWhatTheInterpreterDoes() {
+        final String source = hot("fun f(a, b, c) { return (a * b - c) / -(a + 1) + a * (b - c); }",
+                "f(i, 2, 3);",
+                "var sum = 0; for (var i = 0; i < 50; i = i + 1) sum = sum + f(i, i / 4, 3); print sum; print f(1, 2, 0) < 3;");
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        final CompiledScript script = engine.compile(source);
+        assertEquals(Scripts.run(Engine.Backend.TREE_WALKER, source), Scripts.run(engine, script));
+        assertNotNull(((Stmt.Function) script.statements.get(0)).profile.code);
+    }
+
+    @Test
+    void nestedArithmeticFallsBackOnOtherOperands() {
+        final String source = hot("fun f(a, b, c) { return a + b + c; }",
+                "f(i, 1, 2);",
+                "print f(\"a\", \"b\", \"c\"); print f(1, 2, 3);");
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        assertEquals("abc\n6", Scripts.run(engine, source));
+        assertFalse(engine.hadError());
+    }
+
+    @Test
+    void compiledArithmeticReportsOperandsOfOtherTypes() {
+        for (String call : new String[]{"f(1, \"b\", 2);", "f(nil, 1, 2);", "g(\"a\");"}) {
+            final Engine engine = new Engine(Engine.Backend.TIERED);
+            Scripts.run(engine, hot("fun f(a, b, c) { return a * (b - c); } fun g(a) { return -(a * 2); }",
+                    "{ f(i, 1, 2); g(i); }", call));
+            assertTrue(engine.hadError(), call);
+        }
+    }
+
+    @Test
+    void onlyEnginesWithAJitRunCompiledCode() {
+        final String source = hot("fun f() { return \"interpreted\"; }", "f();", "print f();");
+        final CompiledScript script = new Engine(Engine.Backend.TIERED).compile(source);
+        final JitProfile profile = ((Stmt.Function) script.statements.get(0)).profile;
+        profile.code = (interpreter, frame) -> "compiled";
+
+        assertEquals("interpreted", Scripts.run(new Engine(Engine.Backend.TREE_WALKER), script));
+        assertEquals("compiled", Scripts.run(new Engine(Engine.Backend.TIERED), script));
+    }
+
+}
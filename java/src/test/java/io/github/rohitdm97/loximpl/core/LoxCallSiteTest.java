@@ -0,0 +1,62 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the call in callIt is compiled once it is hot, every callee after the warm-up links or passes its site
+class LoxCallSiteTest {
+    private static final String CALLEES = String.join("\n",
+            "fun a() { return \"a\"; }",
+            "fun b() { return \"b\"; }",
+            "fun c() { return \"c\"; }",
+            "fun d() { return \"d\"; }",
+            "fun adder(n) { fun add() { return n; } return add; }",
+            "class K { init() { this.v = \"k\"; } }",
+            "class L < K {}",
+            "fun callIt(f) { var r = f(); return r; }",
+            "for (var i = 0; i < 1100; i = i + 1) callIt(a);",
+            "");
+
+    private static String run(Engine engine, String source) {
+        final CompiledScript script = engine.compile(CALLEES + source);
+        final String output = Scripts.run(engine, script);
+        assertNotNull(((Stmt.Function) script.statements.get(7)).profile.code);
+        return output;
+    }
+
+    @Test
+    void sitesWithMoreTargetsThanTheyCacheStayCorrect() {
+        final String source = String.join("\n",
+                "print callIt(b); print callIt(c); print callIt(d);",
+                "print callIt(adder(1)); print callIt(adder(2));",
+                "print callIt(K).v; print callIt(L).v;",
+                "print callIt(clock) > 0;",
+                // every kind of callee again, now the site calls through the Interpreter
+                "print callIt(a); print callIt(adder(3)); print callIt(K).v; print callIt(clock) > 0;");
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        final String output = run(engine, source);
+        assertFalse(engine.hadError());
+        assertEquals("b\nc\nd\n1\n2\nk\nk\ntrue\na\n3\nk\ntrue", output);
+        assertEquals(Scripts.run(Engine.Backend.TREE_WALKER, CALLEES + source), output);
+    }
+
+    @Test
+    void closuresSharingATargetKeepTheirUpvalues() {
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        assertEquals("1\n2\n1", run(engine, "var one = adder(1); print callIt(one); print callIt(adder(2)); print callIt(one);"));
+    }
+
+    @Test
+    void linkedSitesReportCalleesTheyCannotCall() {
+        for (String call : new String[]{"callIt(1);", "callIt(adder);", "callIt(join);", "callIt(b); callIt(nil);"}) {
+            final Engine engine = new Engine(Engine.Backend.TIERED);
+            run(engine, call);
+            assertTrue(engine.hadError(), call);
+        }
+    }
+
+}
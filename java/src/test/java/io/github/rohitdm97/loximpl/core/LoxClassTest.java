@@ -0,0 +1,75 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LoxClassTest {
+    private static final String HIERARCHY = String.join("\n",
+            "class A {",
+            "  name() { return \"A\"; }",
+            "  describe() { return \"A.describe \" + this.name(); }",
+            "}",
+            "class B < A {",
+            "  describe() { return \"B>\" + super.describe(); }",
+            "}",
+            "class C < B {",
+            "  name() { return \"C\"; }",
+            "  describe() { return \"C>\" + super.describe(); }",
+            "  base() { return super.name(); }",
+            "}",
+            "");
+
+    @Test
+    void tablesHoldInheritedAndOverriddenMethods() {
+        final Engine engine = new Engine();
+        engine.run(HIERARCHY);
+        final LoxClass a = (LoxClass) engine.getGlobals().get("A");
+        final LoxClass b = (LoxClass) engine.getGlobals().get("B");
+        final LoxClass c = (LoxClass) engine.getGlobals().get("C");
+
+        assertSame(a.findMethod("name"), b.findMethod("name"));
+        assertNotSame(a.findMethod("describe"), c.findMethod("describe"));
+        assertNull(a.findMethod("base"));
+        for (String name : new String[]{"name", "describe", "base"}) {
+            final int slot = c.getRootShape().methodOf(name);
+            assertSame(c.findMethod(name), c.methodAt(slot), name);
+        }
+    }
+
+    @Test
+    void superStartsAtTheSuperclassOfTheDeclaringClass() {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("C>B>A.describe C\nB>A.describe A\nA",
+                    Scripts.run(backend, HIERARCHY + "print C().describe(); print B().describe(); print C().base();"),
+                    backend.name());
+        }
+    }
+
+    @Test
+    void superReachesMethodsInheritedByTheSuperclass() {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("A", Scripts.run(backend, String.join("\n",
+                    "class A { m() { return \"A\"; } }",
+                    "class B < A {}",
+                    "class C < B { m() { return super.m(); } }",
+                    "print C().m();")), backend.name());
+        }
+    }
+
+    @Test
+    void methodsAddedLaterDoNotChangeDeclaredTables() {
+        // the superclass is resolved when the subclass is declared, rebinding its name changes nothing
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("old", Scripts.run(backend, String.join("\n",
+                    "class A { m() { return \"old\"; } }",
+                    "class B < A {}",
+                    "class A { m() { return \"new\"; } }",
+                    "print B().m();")), backend.name());
+        }
+    }
+
+}
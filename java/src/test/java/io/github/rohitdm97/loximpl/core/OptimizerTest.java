@@ -0,0 +1,100 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptimizerTest {
+
+    private static List<Stmt> optimize(String source) {
+        final CompiledScript script = new Engine().compile(source);
+        assertNotNull(script, source);
+        return script.statements;
+    }
+
+    // the expression printed by the last statement of the source
+    private static Expr printed(String source) {
+        final List<Stmt> statements = optimize(source);
+        return ((Stmt.Print) statements.get(statements.size() - 1)).expression;
+    }
+
+    private static Object folded(String expression) {
+        return assertInstanceOf(Expr.Literal.class, printed("print " + expression + ";")).value;
+    }
+
+    @Test
+    void operationsOnLiteralsAreFolded() {
+        assertEquals(7.0, folded("1 + 2 * 3"));
+        assertEquals(-4.0, folded("-(2 + 2)"));
+        assertEquals(Double.POSITIVE_INFINITY, folded("1 / 0"));
+        assertEquals("ab", folded("\"a\" + \"b\""));
+        assertEquals(true, folded("1 < 2 == !nil"));
+        assertEquals(false, folded("\"a\" == 1"));
+    }
+
+    @Test
+    void failingOperationsAreLeftForRuntime() {
+        assertInstanceOf(Expr.Binary.class, printed("print 1 + \"a\";"));
+        assertInstanceOf(Expr.Binary.class, printed("print 1 < nil;"));
+        assertInstanceOf(Expr.Unary.class, printed("print -\"a\";"));
+        // only the failing operation stays, the literals below it are folded
+        final Expr.Binary sum = assertInstanceOf(Expr.Binary.class, printed("print (1 + 2) + \"a\";"));
+        assertEquals(3.0, assertInstanceOf(Expr.Literal.class, sum.left).value);
+
+        final Engine engine = new Engine();
+        Scripts.run(engine, "print 1 + \"a\";");
+        assertTrue(engine.hadError());
+    }
+
+    @Test
+    void groupingsAreDropped() {
+        assertInstanceOf(Expr.Variable.class, printed("var x = 1; print ((x));"));
+    }
+
+    @Test
+    void logicalOperatorsOnLiteralsShortCircuit() {
+        assertInstanceOf(Expr.Variable.class, printed("var x = 1; print nil or x;"));
+        assertEquals(true, folded("true or x"));
+        assertEquals(false, folded("false and x"));
+    }
+
+    @Test
+    void branchesBehindConstantConditionsArePruned() {
+        final Stmt.Print then = assertInstanceOf(Stmt.Print.class, optimize("if (1 < 2) print 1; else print 2;").get(0));
+        assertEquals(1.0, ((Expr.Literal) then.expression).value);
+        final Stmt.Print otherwise = assertInstanceOf(Stmt.Print.class, optimize("if (nil) print 1; else print 2;").get(0));
+        assertEquals(2.0, ((Expr.Literal) otherwise.expression).value);
+
+        assertTrue(optimize("if (false) print 1;").isEmpty());
+        assertTrue(optimize("while (1 > 2) print 1;").isEmpty());
+        assertTrue(optimize("1 + 2;").isEmpty());
+        assertInstanceOf(Stmt.While.class, optimize("var x; while (x) print 1;").get(1));
+    }
+
+    @Test
+    void doubleNegationsAreDroppedFromConditions() {
+        final Stmt.If branch = assertInstanceOf(Stmt.If.class, optimize("var x = 1; if (!!!!x) print 1;").get(1));
+        assertInstanceOf(Expr.Variable.class, branch.condition);
+        final Stmt.While loop = assertInstanceOf(Stmt.While.class, optimize("var x; while (!!x and !!!x) x = 1;").get(1));
+        final Expr.Logical condition = assertInstanceOf(Expr.Logical.class, loop.condition);
+        assertInstanceOf(Expr.Variable.class, condition.left);
+        assertInstanceOf(Expr.Unary.class, condition.right);
+
+        // where the value is used the negations stay, !!x is true or false and not x
+        assertInstanceOf(Expr.Unary.class, printed("var x = 1; print !!x;"));
+        assertEquals("true", Scripts.run(Engine.Backend.TREE_WALKER, "var x = 1; print !!x;"));
+    }
+
+    @Test
+    void callsReturnedInParenthesesStayTailCalls() {
+        final Stmt.Function f = (Stmt.Function) optimize("fun f(n) { return (f(n - 1)); }").get(0);
+        final Expr.Call call = assertInstanceOf(Expr.Call.class, ((Stmt.Return) f.body.get(0)).value);
+        assertTrue(call.tail);
+    }
+
+}
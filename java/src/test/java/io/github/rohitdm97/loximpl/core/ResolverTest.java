@@ -0,0 +1,156 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResolverTest {
+
+    private static List<Stmt> resolve(String source) {
+        final CompiledScript script = new Engine().compile(source);
+        assertNotNull(script, source);
+        return script.statements;
+    }
+
+    @Test
+    void parametersAndLocalsTakeConsecutiveSlots() {
+        final Stmt.Function function = (Stmt.Function) resolve("fun f(a, b) { var c = a; var d = b; }").get(0);
+        assertEquals(2, ((Stmt.Var) function.body.get(0)).slot);
+        assertEquals(3, ((Stmt.Var) function.body.get(1)).slot);
+        assertEquals(4, function.frameSize);
+    }
+
+    @Test
+    void receiverTakesTheFirstSlotOfMethods() {
+        final Stmt.Class klass = (Stmt.Class) resolve("class A { m(a) { var b = a; } }").get(0);
+        final Stmt.Function method = klass.methods.get(0);
+        assertEquals(2, ((Stmt.Var) method.body.get(0)).slot);
+        assertEquals(3, method.frameSize);
+    }
+
+    @Test
+    void shadowingVariablesGetSlotsOfTheirOwn() {
+        final Stmt.Function function = (Stmt.Function) resolve(
+                "fun f() { var a = 1; { var b = a; var a = 2; print b + a; } print a; }").get(0);
+        final Stmt.Block block = (Stmt.Block) function.body.get(1);
+        assertEquals(0, ((Stmt.Var) function.body.get(0)).slot);
+        assertEquals(2, ((Stmt.Var) block.statements.get(1)).slot);
+
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("3\n1", Scripts.run(backend, String.join("\n",
+                    "fun f() { var a = 1; { var b = a; var a = 2; print b + a; } print a; }",
+                    "f();")), backend.name());
+        }
+    }
+
+    @Test
+    void variablesKnowTheirSlotOrUpvalue() {
+        final Stmt.Function outer = (Stmt.Function) resolve(String.join("\n",
+                "var g = 1;",
+                "fun outer(a) {",
+                "  fun inner() { a = a + g; return a; }",
+                "  return inner;",
+                "}")).get(1);
+        final Stmt.Function inner = (Stmt.Function) outer.body.get(0);
+        final Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) inner.body.get(0)).expression;
+        final Expr.Binary sum = (Expr.Binary) assign.value;
+        final Expr.Variable a = (Expr.Variable) sum.left;
+        final Expr.Variable g = (Expr.Variable) sum.right;
+
+        assertEquals(-1, assign.local);
+        assertEquals(0, assign.upvalue);
+        assertEquals(-1, a.local);
+        assertEquals(0, a.upvalue);
+        assertEquals(-1, g.local);
+        assertEquals(-1, g.upvalue);
+        assertEquals(1, ((Expr.Variable) ((Stmt.Return) outer.body.get(1)).value).local);
+    }
+
+    @Test
+    void siblingBlocksReuseSlots() {
+        final Stmt.Function function = (Stmt.Function) resolve(
+                "fun f() { var a; { var b; var c; } { var d; } var e; }").get(0);
+        final Stmt.Block first = (Stmt.Block) function.body.get(1);
+        final Stmt.Block second = (Stmt.Block) function.body.get(2);
+        assertEquals(1, ((Stmt.Var) first.statements.get(0)).slot);
+        assertEquals(2, ((Stmt.Var) first.statements.get(1)).slot);
+        assertEquals(1, ((Stmt.Var) second.statements.get(0)).slot);
+        assertEquals(1, ((Stmt.Var) function.body.get(3)).slot);
+        // the largest block decides
+        assertEquals(3, function.frameSize);
+        assertTrue(first.inlined);
+        assertEquals(1, first.firstSlot);
+    }
+
+    @Test
+    void onlyBlocksWithCapturedVariablesCloseUpvalues() {
+        final Stmt.Function function = (Stmt.Function) resolve(
+                "fun f() { { var a; fun g() { return a; } } { var b; fun h() { return 1; } } }").get(0);
+        assertTrue(((Stmt.Block) function.body.get(0)).closesUpvalues);
+        assertFalse(((Stmt.Block) function.body.get(1)).closesUpvalues);
+    }
+
+    @Test
+    void closuresKeepTheVariableOfTheirBlockWhenItsSlotIsReused() {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("1\n2\n3", Scripts.run(backend, String.join("\n",
+                    "fun make() {",
+                    "  var first; var second;",
+                    "  { var a = 1; fun f() { return a; } first = f; }",
+                    "  { var b = 2; fun g() { return b; } second = g; }",
+                    "  { var c = 3; print first(); print second(); print c; }",
+                    "}",
+                    "make();")), backend.name());
+        }
+    }
+
+    @Test
+    void closuresCaptureOnlyTheVariablesTheyReference() {
+        final Stmt.Function outer = (Stmt.Function) resolve(String.join("\n",
+                "fun outer(a, b, c) {",
+                "  var d;",
+                "  fun middle() {",
+                "    fun inner() { return b + c + b; }",
+                "    return c;",
+                "  }",
+                "}")).get(0);
+        final Stmt.Function middle = (Stmt.Function) outer.body.get(1);
+        final Stmt.Function inner = (Stmt.Function) middle.body.get(0);
+
+        assertEquals(0, outer.captures.length);
+        // middle takes b along for inner even though it does not read it itself
+        assertEquals(2, middle.captures.length);
+        assertTrue(middle.captures[0].local);
+        assertEquals(1, middle.captures[0].index);
+        assertEquals(2, middle.captures[1].index);
+        assertEquals(2, inner.captures.length);
+        assertFalse(inner.captures[0].local);
+        assertEquals(0, inner.captures[0].index);
+        assertEquals(1, inner.captures[1].index);
+    }
+
+    @Test
+    void closuresOfOneVariableShareIt() {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("2\n12\n12", Scripts.run(backend, String.join("\n",
+                    "var get; var set;",
+                    "fun make() {",
+                    "  var unused = 0; var value = 1;",
+                    "  fun g() { return value; } fun s(v) { value = v; }",
+                    "  get = g; set = s;",
+                    "  value = 2;",
+                    "  print get();",
+                    "}",
+                    "make();",
+                    "set(12); print get();",
+                    "fun nested() { fun read() { return get(); } return read; }",
+                    "print nested()();")), backend.name());
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ReturnTest {
+
+    private static void assertOutput(String expected, String source) {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals(expected, Scripts.run(backend, source), backend.name());
+        }
+    }
+
+    @Test
+    void returnLeavesNestedLoopsAndBlocks() {
+        assertOutput("33\n43\nnil", String.join("\n",
+                "fun find(limit) {",
+                "  for (var i = 0; i < 10; i = i + 1) {",
+                "    var j = 0;",
+                "    while (j <= i) {",
+                "      { if (i * j >= limit) return i * 10 + j; }",
+                "      j = j + 1;",
+                "    }",
+                "  }",
+                "  return nil;",
+                "}",
+                "print find(9);",
+                "print find(12);",
+                "print find(1000);"));
+    }
+
+    @Test
+    void compiledFunctionsReturnFromNestedLoops() {
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        final CompiledScript script = engine.compile(String.join("\n",
+                "fun find(limit) {",
+                "  for (var i = 0; i < 10; i = i + 1) {",
+                "    var j = 0;",
+                "    while (j <= i) { { if (i * j >= limit) return i * 10 + j; } j = j + 1; }",
+                "  }",
+                "}",
+                "for (var i = 0; i < 1100; i = i + 1) find(i);",
+                "print find(9); print find(1000);"));
+        assertEquals("33\nnil", Scripts.run(engine, script));
+        assertNotNull(((Stmt.Function) script.statements.get(0)).profile.code);
+    }
+
+    @Test
+    void statementsAfterReturnDoNotRun() {
+        assertOutput("before\n1", String.join("\n",
+                "fun f() {",
+                "  while (true) { print \"before\"; return 1; print \"after\"; }",
+                "  print \"after loop\";",
+                "}",
+                "print f();"));
+    }
+
+    @Test
+    void returnWithoutValueGivesNil() {
+        assertOutput("nil\nnil", "fun f() { return; } fun g() {} print f(); print g();");
+    }
+
+    @Test
+    void returnInAClosureLeavesOnlyTheClosure() {
+        assertOutput("inner\nouter", String.join("\n",
+                "fun outer() {",
+                "  fun inner() { return \"inner\"; }",
+                "  print inner();",
+                "  return \"outer\";",
+                "}",
+                "print outer();"));
+    }
+
+    @Test
+    void returnInAnInitializerGivesTheInstance() {
+        assertOutput("1\ntrue", String.join("\n",
+                "class A { init(x) { this.x = x; if (x > 0) return; this.x = -1; } }",
+                "var a = A(1);",
+                "print a.x;",
+                "print a.init(2) == a;"));
+    }
+
+}
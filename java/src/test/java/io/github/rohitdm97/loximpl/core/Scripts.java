@@ -0,0 +1,76 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.apache.logging.log4j.LogManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// runs Lox code for the tests and captures what it prints, per thread so tests may run scripts concurrently
+final class Scripts {
+    private static final PrintStream STDOUT = System.out;
+    // inherited, so fibers print into the capture of the thread spawning them
+    private static final ThreadLocal<ByteArrayOutputStream> CAPTURE = new InheritableThreadLocal<>();
+
+    static {
+        // the console appender keeps the stream it finds first, errors must not end up in the capture
+        LogManager.getLogger(Scripts.class);
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                final ByteArrayOutputStream capture = CAPTURE.get();
+                if (capture != null) {
+                    capture.write(b);
+                } else {
+                    STDOUT.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                final ByteArrayOutputStream capture = CAPTURE.get();
+                if (capture != null) {
+                    capture.write(b, off, len);
+                } else {
+                    STDOUT.write(b, off, len);
+                }
+            }
+        }, true));
+    }
+
+    private Scripts() {
+    }
+
+    // what the code printed, trimmed
+    static String output(Runnable code) {
+        final ByteArrayOutputStream previous = CAPTURE.get();
+        final ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        CAPTURE.set(capture);
+        try {
+            code.run();
+        } finally {
+            CAPTURE.set(previous);
+        }
+        return capture.toString().trim();
+    }
+
+    // errors are left for the caller to check
+    static String run(Engine engine, String source) {
+        return output(() -> engine.run(source));
+    }
+
+    static String run(Engine engine, CompiledScript script) {
+        return output(() -> engine.run(script));
+    }
+
+    // on a new engine, which must not report errors
+    static String run(Engine.Backend backend, String source) {
+        final Engine engine = new Engine(backend);
+        final String output = run(engine, source);
+        assertFalse(engine.hadError(), source);
+        return output;
+    }
+
+}
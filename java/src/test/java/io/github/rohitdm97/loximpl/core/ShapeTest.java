@@ -0,0 +1,82 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ShapeTest {
+
+    @Test
+    void fieldsAddedInOrderTakeTheNextSlot() {
+        final Shape root = new Shape(Collections.emptyList());
+        final Shape xy = root.with("x").with("y");
+        assertEquals(0, root.size());
+        assertEquals(2, xy.size());
+        assertEquals(0, xy.slotOf("x"));
+        assertEquals(1, xy.slotOf("y"));
+        assertEquals(-1, root.slotOf("x"));
+    }
+
+    @Test
+    void transitionsAreShared() {
+        final Shape root = new Shape(Collections.emptyList());
+        assertSame(root.with("x").with("y"), root.with("x").with("y"));
+        assertNotSame(root.with("x").with("y"), root.with("y").with("x"));
+    }
+
+    @Test
+    void shapesGrownFromOneRootKeepItsMethods() {
+        final Shape root = new Shape(List.of("a", "b"));
+        final Shape grown = root.with("x");
+        assertEquals(2, grown.methodCount());
+        assertEquals(root.methodOf("b"), grown.methodOf("b"));
+        assertEquals(-1, grown.methodOf("x"));
+    }
+
+    @Test
+    void instancesSettingFieldsInOneOrderShareTheirShape() {
+        final LoxClass klass = new LoxClass("C", null, Collections.emptyMap());
+        final LoxInstance first = new LoxInstance(klass);
+        final LoxInstance second = new LoxInstance(klass);
+        final LoxInstance other = new LoxInstance(klass);
+        for (LoxInstance instance : List.of(first, second)) {
+            instance.setField("x", 1.0);
+            instance.setField("y", 2.0);
+            instance.setField("x", 3.0);
+        }
+        other.setField("y", 1.0);
+        other.setField("x", 2.0);
+
+        assertSame(klass.getRootShape().with("x").with("y"), first.getShape());
+        assertSame(first.getShape(), second.getShape());
+        assertNotSame(first.getShape(), other.getShape());
+        assertEquals(3.0, first.getField(first.getShape().slotOf("x")));
+        assertEquals(2.0, other.getField(other.getShape().slotOf("x")));
+        // later instances get room for the fields upfront
+        assertEquals(2, klass.getExpectedFields());
+    }
+
+    @Test
+    void fieldsInAnyOrderKeepTheirValues() {
+        final String source = String.join("\n",
+                "class P {}",
+                "fun make(first) {",
+                "  var p = P();",
+                "  if (first) { p.a = 1; p.b = 2; } else { p.b = 20; p.a = 10; }",
+                "  p.c = p.a + p.b;",
+                "  return p;",
+                "}",
+                "var p = make(true); var q = make(false);",
+                "print p.a; print p.b; print p.c;",
+                "print q.a; print q.b; print q.c;");
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals("1\n2\n3\n10\n20\n30", Scripts.run(backend, source), backend.name());
+        }
+    }
+
+}
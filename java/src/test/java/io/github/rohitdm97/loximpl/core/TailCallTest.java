@@ -0,0 +1,95 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TailCallTest {
+
+    private static void assertOutput(String expected, String source) {
+        for (Engine.Backend backend : Engine.Backend.values()) {
+            assertEquals(expected, Scripts.run(backend, source), backend.name());
+        }
+    }
+
+    private static Expr.Call returned(Stmt.Function function, int index) {
+        return (Expr.Call) ((Stmt.Return) function.body.get(index)).value;
+    }
+
+    @Test
+    void onlyCallsReturnedAsTheyAreAreTailCalls() {
+        final List<Stmt> statements = new Engine().compile(String.join("\n",
+                "fun f(n) {",
+                "  if (n) return f(n - 1) + 1;",
+                "  return f(n - 1);",
+                "}",
+                "fun g() { print f(1); return f(2)(3); }")).statements;
+        final Stmt.Function f = (Stmt.Function) statements.get(0);
+        final Stmt.Function g = (Stmt.Function) statements.get(1);
+        final Expr.Binary sum = (Expr.Binary) ((Stmt.Return) ((Stmt.If) f.body.get(0)).thenBranch).value;
+
+        assertFalse(((Expr.Call) sum.left).tail);
+        assertTrue(returned(f, 1).tail);
+        assertFalse(((Expr.Call) ((Stmt.Print) g.body.get(0)).expression).tail);
+        assertTrue(returned(g, 1).tail);
+        assertFalse(((Expr.Call) returned(g, 1).callee).tail);
+    }
+
+    @Test
+    void deepTailRecursionRunsInConstantStack() {
+        assertOutput("200000", String.join("\n",
+                "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }",
+                "print count(200000, 0);"));
+    }
+
+    @Test
+    void deepMutualRecursionRunsInConstantStack() {
+        assertOutput("true", String.join("\n",
+                "fun even(n) { if (n == 0) return true; return odd(n - 1); }",
+                "fun odd(n) { if (n == 0) return false; return even(n - 1); }",
+                "print even(200000);"));
+    }
+
+    @Test
+    void deepTailRecursionOfMethods() {
+        assertOutput("0", String.join("\n",
+                "class Counter {",
+                "  init() { this.left = 200000; }",
+                "  down() { if (this.left == 0) return this.left; this.left = this.left - 1; return this.down(); }",
+                "}",
+                "print Counter().down();"));
+    }
+
+    @Test
+    void tailCallsOfNativesAndClassesReturnTheirValue() {
+        assertOutput("true\n<instance <class A>>", String.join("\n",
+                "class A {}",
+                "fun now() { return clock(); }",
+                "fun make() { return A(); }",
+                "print now() > 0;",
+                "print make();"));
+    }
+
+    @Test
+    void closuresOfTheCallerOutliveItsTailCall() {
+        assertOutput("3", String.join("\n",
+                "fun apply(f) { return f(); }",
+                "fun caller(n) { var m = n + 1; fun g() { return m + 1; } return apply(g); }",
+                "print caller(1);"));
+    }
+
+    @Test
+    void compiledFunctionsTailCall() {
+        final Engine engine = new Engine(Engine.Backend.TIERED);
+        assertEquals("200000", Scripts.run(engine, String.join("\n",
+                "fun count(n, acc) { if (n == 0) return acc; return count(n - 1, acc + 1); }",
+                "for (var i = 0; i < 1100; i = i + 1) count(1, 0);",
+                "print count(200000, 0);")));
+        assertFalse(engine.hadError());
+    }
+
+}
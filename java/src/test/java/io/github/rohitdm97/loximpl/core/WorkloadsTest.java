@@ -0,0 +1,45 @@
+package io.github.rohitdm97.loximpl.core;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// the workloads the benchmarks measure must give the same output on every backend, or they compare different work
+class WorkloadsTest {
+    private static final Path WORKLOADS = Paths.get("src/jmh/resources/workloads");
+
+    static List<Arguments> cases() throws IOException {
+        final List<Arguments> cases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(WORKLOADS)) {
+            for (Path file : (Iterable<Path>) files.filter(file -> file.toString().endsWith(".lox")).sorted()::iterator) {
+                for (Engine.Backend backend : Engine.Backend.values()) {
+                    if (backend != Engine.Backend.TREE_WALKER) {
+                        cases.add(Arguments.of(file.getFileName().toString(), backend));
+                    }
+                }
+            }
+        }
+        return cases;
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("cases")
+    void backendsAgreeWithTheTreeWalker(String workload, Engine.Backend backend) throws IOException {
+        final String source = Files.readString(WORKLOADS.resolve(workload));
+        final String expected = Scripts.run(Engine.Backend.TREE_WALKER, source);
+        assertFalse(expected.isEmpty(), workload);
+        assertEquals(expected, Scripts.run(backend, source));
+    }
+
+}